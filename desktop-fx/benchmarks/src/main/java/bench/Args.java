@@ -0,0 +1,55 @@
+package bench;
+
+import db.Db;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+/** {@code --name=value} parsing shared by the command-line tools in this module. */
+final class Args {
+
+  private Args() {}
+
+  static String value(String[] args, String name, String fallback) {
+    String prefix = "--" + name + "=";
+    for (String a : args) {
+      if (a.startsWith(prefix)) return a.substring(prefix.length());
+    }
+    return fallback;
+  }
+
+  static int intValue(String[] args, String name, int fallback) {
+    String v = value(args, name, null);
+    return v == null ? fallback : Integer.parseInt(v.replace("_", ""));
+  }
+
+  static long longValue(String[] args, String name, long fallback) {
+    String v = value(args, name, null);
+    return v == null ? fallback : Long.parseLong(v.replace("_", ""));
+  }
+
+  /** Parses {@code A:3,B:1}; constants left out get no weight. */
+  static <E extends Enum<E>> Map<E, Integer> weights(String[] args, String name, Class<E> type, Map<E, Integer> fallback) {
+    String v = value(args, name, null);
+    if (v == null) return fallback;
+    Map<E, Integer> out = new EnumMap<>(type);
+    for (String part : v.split(",")) {
+      String[] kv = part.trim().split(":");
+      out.put(Enum.valueOf(type, kv[0].trim().toUpperCase()), kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1);
+    }
+    return out;
+  }
+
+  /**
+   * Points the app at {@code --home} (default {@code target/loadtest-home}):
+   * the database lives in {@code <home>/.embassyfx} and exports in
+   * {@code <home>/Documents}.
+   */
+  static Path home(String[] args) {
+    Path home = Path.of(value(args, "home", "target/loadtest-home")).toAbsolutePath();
+    Db.shutdown();
+    System.setProperty("user.home", home.toString());
+    return home;
+  }
+}
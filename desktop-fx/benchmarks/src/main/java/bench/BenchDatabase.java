@@ -0,0 +1,119 @@
+package bench;
+
+import db.Db;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Seeded databases for benchmarks. Each outflow size is generated once
+ * (deterministically, from a fixed seed) into {@code bench.data} and then
+ * copied into a scratch home directory per trial, so write benchmarks never
+ * leak into the next run.
+ *
+ * <p>The app finds its database and export folder under {@code user.home},
+ * which is read lazily, so pointing that property at the scratch directory
+ * before the first query is all the wiring needed.
+ */
+final class BenchDatabase {
+
+  /** Products in every seeded database. */
+  static final int PRODUCTS = 1_000;
+
+  private static final long SEED = 42L;
+
+  private final Path home;
+
+  private BenchDatabase(Path home) {
+    this.home = home;
+  }
+
+  /** SKU of the {@code i}-th seeded product. */
+  static String sku(int i) {
+    return DataGenerator.sku(i);
+  }
+
+  /** Copies the seeded database for {@code outflowRows} into a fresh scratch home and points the app at it. */
+  static BenchDatabase open(int outflowRows) {
+    Path seeded = seeded(outflowRows);
+    try {
+      Path home = Files.createTempDirectory("embassy-bench");
+      Path db = home.resolve(".embassyfx").resolve("embassy.db");
+      Files.createDirectories(db.getParent());
+      Files.copy(seeded, db);
+      Db.shutdown();
+      System.setProperty("user.home", home.toString());
+      return new BenchDatabase(home);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Closes the pool and removes the scratch home. */
+  void close() {
+    Db.shutdown();
+    deleteTree(home);
+  }
+
+  /** Where trial-specific files (exports) end up. */
+  Path home() {
+    return home;
+  }
+
+  private static synchronized Path seeded(int outflowRows) {
+    Path dir = Path.of(System.getProperty("bench.data", "target/bench-data"));
+    Path file = dir.resolve("outflow-" + outflowRows + ".db");
+    if (Files.exists(file)) return file;
+
+    try {
+      Files.createDirectories(dir);
+      Path staging = Files.createTempDirectory(dir, "seed");
+      Db.shutdown();
+      System.setProperty("user.home", staging.toString());
+      try {
+        seed(outflowRows);
+        try (Connection c = Db.writer(); Statement st = c.createStatement()) {
+          st.execute("pragma wal_checkpoint(TRUNCATE)");
+        }
+        Db.shutdown();
+        Files.move(staging.resolve(".embassyfx").resolve("embassy.db"), file, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Db.shutdown();
+        deleteTree(staging);
+      }
+      return file;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Three years of history at whatever daily rate yields {@code outflowRows}
+   * (with headroom for the weekend dip), cut off at exactly that many rows.
+   */
+  private static void seed(int outflowRows) {
+    int perDay = (int) Math.ceil(outflowRows / (3 * 365 * 0.7));
+    DataGenerator.Config d = DataGenerator.Config.defaults();
+    new DataGenerator(new DataGenerator.Config(PRODUCTS, 3, perDay, d.categories(), d.units(), SEED))
+        .generate(outflowRows);
+  }
+
+  static void deleteTree(Path root) {
+    if (!Files.exists(root)) return;
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Same arguments as JMH's own main, but
+ * unless {@code -rf}/{@code -rff} are given the results are written as JSON
+ * to {@code target/jmh/jmh-<timestamp>.json}, ready to diff against the
+ * report of an earlier release.
+ */
+public final class BenchMain {
+
+  private BenchMain() {}
+
+  public static void main(String[] args) throws Exception {
+    List<String> all = new ArrayList<>(List.of(args));
+    if (!all.contains("-rf")) all.addAll(List.of("-rf", "json"));
+    if (!all.contains("-rff")) {
+      Path dir = Path.of("target", "jmh");
+      Files.createDirectories(dir);
+      String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+      all.addAll(List.of("-rff", dir.resolve("jmh-" + ts + ".json").toString()));
+    }
+    org.openjdk.jmh.Main.main(all.toArray(String[]::new));
+  }
+}
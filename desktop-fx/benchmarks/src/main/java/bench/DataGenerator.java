@@ -0,0 +1,223 @@
+package bench;
+
+import db.Db;
+import model.Category;
+import model.OutflowEntry;
+import model.Product;
+import model.UnitType;
+import repo.OutflowRepo;
+import repo.ProductRepo;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Fills the products and outflow tables with realistic synthetic data: a
+ * catalog with weighted category/unit mixes and years of issue history at a
+ * chosen daily rate (fewer on weekends, a few popular SKUs taking most of
+ * the traffic). Everything is derived from one seed, so two runs with the
+ * same options produce the same rows, dated back from the day they run.
+ *
+ * <pre>
+ * java -cp benchmarks.jar bench.DataGenerator --home=/tmp/embassy-3y --skus=5000 --years=3 --per-day=400
+ * </pre>
+ *
+ * The database is created under {@code <home>/.embassyfx/embassy.db} with the
+ * same migrations the app runs on startup; point the app or
+ * {@link LoadTest} at it with the same {@code --home}.
+ */
+public final class DataGenerator {
+
+  /** Rows per insert transaction. */
+  private static final int BATCH = 10_000;
+
+  private static final String[] USERS = {
+      "alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi", "ivan", "judy",
+      "ken", "lena", "mike", "nora", "omar", "pia", "quinn", "rosa", "sam", "tara"
+  };
+  private static final String[] WORDS = {
+      "Toner", "Paper", "Stapler", "Cable", "Mouse", "Keyboard", "Cleaner", "Gloves",
+      "Chair", "Desk", "Folder", "Marker", "Battery", "Charger", "Tape", "Envelope",
+      "Bleach", "Coffee", "Sugar", "Lamp", "Drive", "Monitor", "Binder", "Pen"
+  };
+
+  /**
+   * Generation options. Weights are relative; categories or units left out
+   * of the maps are never generated.
+   */
+  public record Config(
+      int skus,
+      int years,
+      int perDay,
+      Map<Category, Integer> categories,
+      Map<UnitType, Integer> units,
+      long seed
+  ) {
+    public static Config defaults() {
+      Map<Category, Integer> categories = new EnumMap<>(Category.class);
+      categories.put(Category.STATIONERY, 40);
+      categories.put(Category.ELECTRONICS, 15);
+      categories.put(Category.CLEANING, 15);
+      categories.put(Category.FOOD, 15);
+      categories.put(Category.FURNITURE, 5);
+      categories.put(Category.OTHER, 10);
+      Map<UnitType, Integer> units = new EnumMap<>(UnitType.class);
+      units.put(UnitType.EACH, 50);
+      units.put(UnitType.BOX, 15);
+      units.put(UnitType.REAM, 10);
+      units.put(UnitType.ROLL, 5);
+      units.put(UnitType.PACK, 15);
+      units.put(UnitType.CRATE, 3);
+      units.put(UnitType.CANISTER, 2);
+      return new Config(2_000, 3, 200, categories, units, 42L);
+    }
+
+    /**
+     * Reads {@code --skus=}, {@code --years=}, {@code --per-day=}, {@code --seed=},
+     * {@code --categories=STATIONERY:5,FOOD:2} and {@code --units=EACH:3,BOX:1}
+     * on top of {@link #defaults()}; other arguments are ignored.
+     */
+    public static Config parse(String[] args) {
+      Config d = defaults();
+      return new Config(
+          Args.intValue(args, "skus", d.skus()),
+          Args.intValue(args, "years", d.years()),
+          Args.intValue(args, "per-day", d.perDay()),
+          Args.weights(args, "categories", Category.class, d.categories()),
+          Args.weights(args, "units", UnitType.class, d.units()),
+          Args.longValue(args, "seed", d.seed()));
+    }
+
+    /** Expected outflow rows (weekends run at a tenth of the rate), for sizing messages. */
+    public long approxOutflowRows() {
+      return Math.round(years * 365 * perDay * 5.2 / 7);
+    }
+  }
+
+  /** Row counts actually written. */
+  public record Result(int products, long outflow, long millis) {}
+
+  private final Config config;
+  private final Random rnd;
+  private final ProductRepo products = new ProductRepo();
+  private final OutflowRepo outflow = new OutflowRepo();
+
+  public DataGenerator(Config config) {
+    this.config = config;
+    this.rnd = new Random(config.seed());
+  }
+
+  public static void main(String[] args) {
+    Config config = Config.parse(args);
+    Path home = Args.home(args);
+    System.out.printf("Generating %,d SKUs and ~%,d outflow rows into %s%n",
+        config.skus(), config.approxOutflowRows(), home);
+    try {
+      Result r = new DataGenerator(config).generate();
+      System.out.printf("Wrote %,d products and %,d outflow rows in %.1f s%n",
+          r.products(), r.outflow(), r.millis() / 1000.0);
+    } finally {
+      Db.shutdown();
+    }
+  }
+
+  /** SKU of the {@code i}-th generated product. */
+  public static String sku(int i) {
+    return String.format("SKU-%05d", i);
+  }
+
+  /** Writes the catalog and history into the database the app currently points at. */
+  public Result generate() {
+    return generate(Long.MAX_VALUE);
+  }
+
+  /** Like {@link #generate()}, but stops after {@code maxOutflowRows} history rows. */
+  public Result generate(long maxOutflowRows) {
+    long start = System.nanoTime();
+    LocalDate today = LocalDate.now();
+    LocalDate first = today.minusYears(config.years());
+
+    List<Product> catalog = catalog(first.atTime(8, 0));
+    for (int from = 0; from < catalog.size(); from += BATCH) {
+      List<Product> chunk = catalog.subList(from, Math.min(catalog.size(), from + BATCH));
+      Db.inTransaction(c -> { products.upsertAll(c, chunk); return null; });
+    }
+
+    long rows = 0;
+    List<OutflowEntry> batch = new ArrayList<>(BATCH);
+    days:
+    for (LocalDate day = first; day.isBefore(today); day = day.plusDays(1)) {
+      for (int i = 0, n = issuesOn(day); i < n; i++) {
+        if (rows + batch.size() == maxOutflowRows) break days;
+        batch.add(issue(catalog, day));
+        if (batch.size() == BATCH) rows += flush(batch);
+      }
+    }
+    rows += flush(batch);
+    return new Result(catalog.size(), rows, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  private List<Product> catalog(LocalDateTime addedFrom) {
+    Category[] categories = pick(config.categories(), Category.class);
+    UnitType[] units = pick(config.units(), UnitType.class);
+    List<Product> out = new ArrayList<>(config.skus());
+    for (int i = 0; i < config.skus(); i++) {
+      out.add(new Product(
+          sku(i),
+          WORDS[rnd.nextInt(WORDS.length)] + " " + WORDS[rnd.nextInt(WORDS.length)] + " " + i,
+          BigDecimal.valueOf(50 + rnd.nextInt(500_000), 2),
+          1_000_000_000,   // never runs out under load tests
+          units[rnd.nextInt(units.length)],
+          categories[rnd.nextInt(categories.length)],
+          addedFrom.plusMinutes(i)));
+    }
+    return out;
+  }
+
+  /** Daily volume varies +/-50% around the rate, with a quiet weekend. */
+  private int issuesOn(LocalDate day) {
+    double base = config.perDay() * (0.5 + rnd.nextDouble());
+    DayOfWeek dow = day.getDayOfWeek();
+    if (dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY) base *= 0.1;
+    return (int) Math.round(base);
+  }
+
+  private OutflowEntry issue(List<Product> catalog, LocalDate day) {
+    // Squaring a uniform value skews picks toward the front of the catalog.
+    double r = rnd.nextDouble();
+    Product p = catalog.get((int) (r * r * catalog.size()));
+    int qty = 1 + (int) Math.abs(rnd.nextGaussian() * 4);
+    LocalDateTime at = day.atTime(8, 0).plusSeconds(rnd.nextInt(9 * 3600));
+    return new OutflowEntry(at, USERS[rnd.nextInt(USERS.length)], p.sku(), p.name(),
+        p.unit().name(), qty, p.category().name(), p.price(),
+        p.price().multiply(BigDecimal.valueOf(qty)));
+  }
+
+  private long flush(List<OutflowEntry> batch) {
+    if (batch.isEmpty()) return 0;
+    List<OutflowEntry> rows = List.copyOf(batch);
+    batch.clear();
+    Db.inTransaction(c -> { outflow.addAll(c, rows); return null; });
+    return rows.size();
+  }
+
+  /** Expands weights into a lookup table: {A:3, B:1} becomes [A, A, A, B]. */
+  private static <E extends Enum<E>> E[] pick(Map<E, Integer> weights, Class<E> type) {
+    List<E> out = new ArrayList<>();
+    for (Map.Entry<E, Integer> w : weights.entrySet()) {
+      for (int i = 0; i < w.getValue(); i++) out.add(w.getKey());
+    }
+    if (out.isEmpty()) throw new IllegalArgumentException("No " + type.getSimpleName() + " weights given");
+    @SuppressWarnings("unchecked")
+    E[] arr = (E[]) java.lang.reflect.Array.newInstance(type, out.size());
+    return out.toArray(arr);
+  }
+}
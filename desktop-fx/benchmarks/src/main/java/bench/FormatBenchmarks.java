@@ -0,0 +1,46 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import util.CsvEncoder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-cell formatting used by every exported row; no database involved. Each
+ * call encodes one cell as a one-field record into an encoder that is reused
+ * across calls, as in an export, and hands its buffer to a discarding writer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmarks {
+
+  /** Plain cells are the common case; quoted ones need escaping. */
+  @Param({"HP Laser Toner 85A", "Toner, black \"85A\""})
+  public String cell;
+
+  private final long priceCents = 1_234_567;
+  private CsvEncoder csv;
+
+  @Setup
+  public void setUp() {
+    csv = new CsvEncoder(Writer.nullWriter());
+  }
+
+  @Benchmark
+  public void csvText() throws IOException {
+    csv.text(cell);
+    csv.endRow();
+  }
+
+  @Benchmark
+  public void csvMoney() throws IOException {
+    csv.money(priceCents);
+    csv.endRow();
+  }
+}
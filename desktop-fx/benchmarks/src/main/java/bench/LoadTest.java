@@ -0,0 +1,194 @@
+package bench;
+
+import db.Db;
+import model.Product;
+import service.ExportService;
+import service.InventoryService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Headless load driver. Worker threads replay a weighted mix of the
+ * operations a busy office produces (issue, receive, inventory list, outflow
+ * export) through the same services the UI calls, then throughput and
+ * latency percentiles are printed per operation.
+ *
+ * <pre>
+ * java -cp benchmarks.jar bench.DataGenerator --home=/tmp/embassy-3y --years=3 --per-day=400
+ * java -cp benchmarks.jar bench.LoadTest --home=/tmp/embassy-3y --threads=4 --seconds=60 \
+ *      --mix=ISSUE:60,RECEIVE:20,LIST:15,EXPORT:5
+ * </pre>
+ *
+ * The database under {@code --home} is modified (issues and receipts are
+ * real writes), so run it against generated data or a copy.
+ */
+public final class LoadTest {
+
+  public enum Op { ISSUE, RECEIVE, LIST, EXPORT }
+
+  /** Latencies of one operation on one worker, in nanoseconds. */
+  private static final class Samples {
+    long[] nanos = new long[1024];
+    int size;
+    int errors;
+    String firstError;
+
+    void add(long v) {
+      if (size == nanos.length) nanos = Arrays.copyOf(nanos, size * 2);
+      nanos[size++] = v;
+    }
+  }
+
+  private final InventoryService inventory = new InventoryService();
+  private final ExportService export = new ExportService();
+  private final List<String> skus;
+
+  private LoadTest(List<String> skus) {
+    this.skus = skus;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    Path home = Args.home(args);
+    int threads = Args.intValue(args, "threads", 4);
+    int seconds = Args.intValue(args, "seconds", 60);
+    int warmup = Args.intValue(args, "warmup", 5);
+    Map<Op, Integer> mix = Args.weights(args, "mix", Op.class,
+        Map.of(Op.ISSUE, 60, Op.RECEIVE, 20, Op.LIST, 15, Op.EXPORT, 5));
+
+    try {
+      List<String> skus = new InventoryService().list("SKU").stream().map(Product::sku).toList();
+      if (skus.isEmpty()) {
+        System.err.println("No products under " + home + "; run bench.DataGenerator first.");
+        System.exit(2);
+      }
+      System.out.printf("%s: %,d SKUs, %d threads, mix %s%n", home, skus.size(), threads, mix);
+
+      LoadTest test = new LoadTest(skus);
+      if (warmup > 0) test.run(threads, warmup, mix);
+      long start = System.nanoTime();
+      List<Map<Op, Samples>> perThread = test.run(threads, seconds, mix);
+      report(perThread, (System.nanoTime() - start) / 1e9);
+    } finally {
+      Db.shutdown();
+    }
+  }
+
+  private List<Map<Op, Samples>> run(int threads, int seconds, Map<Op, Integer> mix) throws InterruptedException {
+    Op[] table = weighted(mix);
+    AtomicBoolean stop = new AtomicBoolean();
+    CountDownLatch done = new CountDownLatch(threads);
+    List<Map<Op, Samples>> results = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Map<Op, Samples> samples = new EnumMap<>(Op.class);
+      for (Op op : Op.values()) samples.put(op, new Samples());
+      results.add(samples);
+      Thread worker = new Thread(() -> {
+        try {
+          ThreadLocalRandom rnd = ThreadLocalRandom.current();
+          while (!stop.get()) {
+            Op op = table[rnd.nextInt(table.length)];
+            long t0 = System.nanoTime();
+            try {
+              execute(op, rnd);
+              samples.get(op).add(System.nanoTime() - t0);
+            } catch (RuntimeException e) {
+              Samples s = samples.get(op);
+              if (s.errors++ == 0) s.firstError = e.toString();
+            }
+          }
+        } finally {
+          done.countDown();
+        }
+      }, "load-" + t);
+      worker.setDaemon(true);
+      worker.start();
+    }
+    Thread.sleep(seconds * 1000L);
+    stop.set(true);
+    done.await();
+    return results;
+  }
+
+  private void execute(Op op, ThreadLocalRandom rnd) {
+    String sku = skus.get(rnd.nextInt(skus.size()));
+    switch (op) {
+      case ISSUE -> inventory.issue("load", sku, 1 + rnd.nextInt(5));
+      case RECEIVE -> inventory.receive(sku, 1 + rnd.nextInt(20));
+      case LIST -> inventory.list("SKU");
+      case EXPORT -> {
+        // Export names only carry a seconds timestamp; keep workers apart.
+        Path file = export.exportOutflow("DATE_DESC", Thread.currentThread().getName());
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+  }
+
+  private static void report(List<Map<Op, Samples>> perThread, double elapsedSeconds) {
+    System.out.printf("%n%-8s %10s %10s %9s %9s %9s %9s %9s %7s%n",
+        "op", "count", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+    long total = 0;
+    for (Op op : Op.values()) {
+      int n = 0, errors = 0;
+      for (Map<Op, Samples> m : perThread) {
+        n += m.get(op).size;
+        errors += m.get(op).errors;
+      }
+      if (n == 0 && errors == 0) continue;
+      long[] all = new long[n];
+      int at = 0;
+      for (Map<Op, Samples> m : perThread) {
+        Samples s = m.get(op);
+        System.arraycopy(s.nanos, 0, all, at, s.size);
+        at += s.size;
+      }
+      Arrays.sort(all);
+      total += n;
+      System.out.printf("%-8s %,10d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %7d%n",
+          op, n, n / elapsedSeconds,
+          ms(percentile(all, 50)), ms(percentile(all, 90)), ms(percentile(all, 99)),
+          ms(percentile(all, 99.9)), ms(n == 0 ? 0 : all[n - 1]), errors);
+    }
+    System.out.printf("%-8s %,10d %10.1f%n", "total", total, total / elapsedSeconds);
+    for (Op op : Op.values()) {
+      for (Map<Op, Samples> m : perThread) {
+        if (m.get(op).firstError != null) {
+          System.out.println(op + " failed: " + m.get(op).firstError);
+          break;
+        }
+      }
+    }
+  }
+
+  /** Nearest-rank percentile of a sorted array. */
+  private static long percentile(long[] sorted, double p) {
+    if (sorted.length == 0) return 0;
+    int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+    return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+  }
+
+  private static double ms(long nanos) {
+    return nanos / 1e6;
+  }
+
+  private static Op[] weighted(Map<Op, Integer> mix) {
+    List<Op> out = new ArrayList<>();
+    mix.forEach((op, w) -> { for (int i = 0; i < w; i++) out.add(op); });
+    if (out.isEmpty()) throw new IllegalArgumentException("Empty --mix");
+    return out.toArray(Op[]::new);
+  }
+}
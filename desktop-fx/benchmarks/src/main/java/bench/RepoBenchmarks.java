@@ -0,0 +1,82 @@
+package bench;
+
+import model.Category;
+import model.OutflowEntry;
+import model.Product;
+import model.UnitType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import repo.OutflowRepo;
+import repo.ProductRepo;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Data-layer hot paths against a seeded database of {@code outflowRows} history rows. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepoBenchmarks {
+
+  @Param({"1000", "100000", "1000000"})
+  public int outflowRows;
+
+  private BenchDatabase db;
+  private final ProductRepo products = new ProductRepo();
+  private final OutflowRepo outflow = new OutflowRepo();
+  private int next;
+
+  @Setup(Level.Trial)
+  public void open() {
+    db = BenchDatabase.open(outflowRows);
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    db.close();
+  }
+
+  private String nextSku() {
+    next = (next + 7919) % BenchDatabase.PRODUCTS;
+    return BenchDatabase.sku(next);
+  }
+
+  @Benchmark
+  public Product productFind() {
+    return products.find(nextSku());
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public List<Product> productList() {
+    return products.list("order by sku");
+  }
+
+  @Benchmark
+  public Product productUpsert() {
+    String sku = nextSku();
+    return products.upsert(new Product(sku, "Bench " + sku, new BigDecimal("12.34"), 1_000_000_000,
+        UnitType.EACH, Category.OTHER, LocalDateTime.now()));
+  }
+
+  @Benchmark
+  public void outflowAdd() {
+    String sku = nextSku();
+    outflow.add(new OutflowEntry(LocalDateTime.now(), "bench", sku, "Bench " + sku, "EACH", 1,
+        "OTHER", new BigDecimal("12.34")));
+  }
+
+  /** Full sorted read of the history; scales with outflowRows. */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 2, time = 2)
+  @Measurement(iterations = 3, time = 2)
+  public void outflowListSorted(Blackhole bh) {
+    bh.consume(outflow.listSorted("DATE_DESC"));
+  }
+}
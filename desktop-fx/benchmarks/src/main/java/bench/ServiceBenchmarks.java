@@ -0,0 +1,65 @@
+package bench;
+
+import model.Product;
+import org.openjdk.jmh.annotations.*;
+import service.ExportService;
+import service.InventoryService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** Service-level paths: a stock issue transaction and a full outflow CSV export. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmarks {
+
+  @Param({"1000", "100000", "1000000"})
+  public int outflowRows;
+
+  private BenchDatabase db;
+  private InventoryService inventory;
+  private ExportService export;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void open() {
+    db = BenchDatabase.open(outflowRows);
+    inventory = new InventoryService();
+    export = new ExportService();
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    db.close();
+  }
+
+  /** Conditional stock decrement plus history insert (and rollup trigger) in one transaction. */
+  @Benchmark
+  public Product inventoryIssue() {
+    next = (next + 7919) % BenchDatabase.PRODUCTS;
+    return inventory.issue("bench", BenchDatabase.sku(next), 1);
+  }
+
+  /** Streams the whole history to CSV; the file is deleted so the disk does not fill up. */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 2, time = 2)
+  @Measurement(iterations = 3, time = 2)
+  public long exportOutflow() {
+    Path file = export.exportOutflow("DATE_DESC", "bench");
+    try {
+      long size = Files.size(file);
+      Files.delete(file);
+      return size;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
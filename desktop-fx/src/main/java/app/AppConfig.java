@@ -13,11 +13,9 @@ public class AppConfig {
     // If Db.java's userDbPath() is already creating the folder, you can remove this later.
     PathUtil.ensureBaseFolders();
 
-    // *** FIX: Call connect() instead of init() ***
-    // We call connect() and immediately close it in the try-with-resources
-    // block. This forces the entire initialization process to run without
-    // keeping the connection open unnecessarily if it's not immediately needed.
-    try (java.sql.Connection c = Db.connect()) {
+    // Borrowing the writer opens the connection pool and runs the schema
+    // setup; closing it just hands the connection back to the pool.
+    try (java.sql.Connection c = Db.writer()) {
       // The database is now guaranteed to be initialized.
       // We don't need to do anything else here.
     } catch (java.sql.SQLException e) {
@@ -1,35 +1,175 @@
 package app;
 
+import db.Db;
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.Scene;
 import javafx.scene.Parent;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import service.ArchiveService;
+import service.BackupService;
+import service.DbExecutor;
 import ui.LoginController;
+import ui.MainController;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * The login window is shown first and nothing else blocks it. While the user
+ * types, the database is opened and migrated on one thread and the main
+ * window is built on another; logging in then only swaps scenes.
+ */
 public class Main extends Application {
+
+  private static final System.Logger LOG = System.getLogger(Main.class.getName());
+
+  /**
+   * Set by the packaging workflow for the CDS training run: start up, open the
+   * main window without logging in, let the first data load finish and exit.
+   */
+  private static final boolean CDS_TRAINING = Boolean.getBoolean("embassyfx.cdsTraining");
+
+  private final StartupTrace trace = new StartupTrace();
+
+  private record MainView(Parent root, MainController controller) {}
+
+  private CompletableFuture<Void> dbReady;
+  private CompletableFuture<MainView> mainView;
+  private Scene mainScene;
+  private boolean mainRequested;
+
   @Override
   public void start(Stage stage) throws Exception {
-    AppConfig.ensureFoldersAndDb();
+    trace.mark("fx.start");
+    Rectangle2D screen = Screen.getPrimary().getVisualBounds();
+    dbReady = background("db.init", () -> {
+      AppConfig.ensureFoldersAndDb();
+      return null;
+    });
+    // Nodes may be built off the FX thread while they are in no scene, so
+    // only the FXML load runs here; should it fail, it is repeated on the FX
+    // thread. The Scene, CSS and layout are done on the FX thread.
+    mainView = background("main.preload", this::loadMain)
+        .exceptionallyAsync(e -> {
+          LOG.log(System.Logger.Level.WARNING, "Background load of main.fxml failed; loading on the FX thread", e);
+          return loadMain();
+        }, Platform::runLater);
+    // Start the table queries as soon as the view exists; they wait on the
+    // connection pool, so they run right after the migration finishes. The
+    // scene is warmed up in the same FX pulse, before login is done.
+    mainView.thenAcceptAsync(v -> {
+      v.controller().loadData();
+      mainScene(v, screen);
+    }, Platform::runLater);
+
     FXMLLoader loader = new FXMLLoader(getClass().getResource("/ui/login.fxml"));
     Scene scene = new Scene(loader.load());
     LoginController ctrl = loader.getController();
-    ctrl.onLoggedIn(user -> {
-      try {
-        FXMLLoader mainLoader = new FXMLLoader(getClass().getResource("/ui/main.fxml"));
-        Parent mainRoot = mainLoader.load();
-        Scene mainScene = new Scene(mainRoot, stage.getWidth(), stage.getHeight());
-        stage.setTitle("Embassy Inventory");
-        stage.setScene(mainScene);
-        stage.setMaximized(true);
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
-    });
+    ctrl.onLoggedIn(user -> showMain(stage, ctrl));
     stage.setTitle("Login");
     stage.setScene(scene);
     stage.setMaximized(true);
     stage.show();
+    trace.mark("login.shown");
+
+    if (CDS_TRAINING) showMain(stage, ctrl);
+  }
+
+  /** Loads main.fxml: the node tree and its controller, not yet in a scene. */
+  private MainView loadMain() {
+    try {
+      FXMLLoader mainLoader = new FXMLLoader(getClass().getResource("/ui/main.fxml"));
+      Parent mainRoot = mainLoader.load();
+      return new MainView(mainRoot, mainLoader.getController());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * The main scene, created on first call on the FX thread, with CSS and
+   * layout run once so skins exist before the first frame.
+   */
+  private Scene mainScene(MainView view, Rectangle2D size) {
+    if (mainScene == null) {
+      long start = System.nanoTime();
+      mainScene = new Scene(view.root(), size.getWidth(), size.getHeight());
+      view.root().applyCss();
+      view.root().layout();
+      trace.end("main.scene", start);
+    }
+    return mainScene;
+  }
+
+  /** Switches to the main window once the database and the view are both ready. */
+  private void showMain(Stage stage, LoginController login) {
+    if (mainRequested) return;
+    mainRequested = true;
+    long start = System.nanoTime();
+    if (!dbReady.isDone() || !mainView.isDone()) login.setMessage("Loading…");
+    dbReady.thenCombine(mainView, (v, view) -> view)
+        .whenComplete((view, err) -> Platform.runLater(() -> {
+          if (err != null) {
+            Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+            LOG.log(System.Logger.Level.ERROR, "Startup failed", cause);
+            login.setMessage("Could not start: " + cause.getMessage());
+            return;
+          }
+          stage.setTitle("Embassy Inventory");
+          stage.setScene(mainScene(view, Screen.getPrimary().getVisualBounds()));
+          stage.setMaximized(true);
+          trace.end("login.toMain", start);
+          trace.mark("main.shown");
+          trace.report();
+          if (CDS_TRAINING) {
+            PauseTransition settle = new PauseTransition(Duration.seconds(3));
+            settle.setOnFinished(e -> Platform.exit());
+            settle.play();
+            return;
+          }
+          // Housekeeping waits until the user is in, so it never competes
+          // with startup for the disk.
+          new ArchiveService().runAsync().exceptionally(e -> {
+            LOG.log(System.Logger.Level.WARNING, "Outflow archiving failed", e);
+            return null;
+          });
+          new BackupService().startSchedule();
+        }));
+  }
+
+  /** Runs one startup phase on its own daemon thread and records how long it took. */
+  private <T> CompletableFuture<T> background(String phase, Supplier<T> work) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Thread.ofPlatform().daemon().name("startup-" + phase).start(() -> {
+      long start = System.nanoTime();
+      T value;
+      try {
+        value = work.get();
+      } catch (Throwable e) {
+        trace.end(phase, start);
+        result.completeExceptionally(e);
+        return;
+      }
+      // Recorded before completing, so the phase is in the report that dependents print.
+      trace.end(phase, start);
+      result.complete(value);
+    });
+    return result;
+  }
+
+  @Override
+  public void stop() {
+    DbExecutor.shutdown();
+    Db.shutdown();
   }
   public static void main(String[] args) { launch(args); }
 }
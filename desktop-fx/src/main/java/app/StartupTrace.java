@@ -0,0 +1,55 @@
+package app;
+
+import metrics.Metrics;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Milestones and phase durations of one application start. Offsets are
+ * measured from JVM launch, so class loading and toolkit start-up before
+ * {@code Main.start()} are included. Every entry is also recorded as a
+ * {@code startup.*} timer, which puts it in the Diagnostics tab and JMX.
+ */
+final class StartupTrace {
+
+  private static final System.Logger LOG = System.getLogger(StartupTrace.class.getName());
+
+  private record Entry(String name, long durationMillis, long doneAtMillis) {}
+
+  private final long jvmStart = ProcessHandle.current().info().startInstant()
+      .map(Instant::toEpochMilli)
+      .orElse(System.currentTimeMillis());
+  private final List<Entry> entries = new ArrayList<>();
+
+  /** A point in time, e.g. the login window becoming visible. */
+  synchronized void mark(String name) {
+    long at = sinceJvmStart();
+    entries.add(new Entry(name, -1, at));
+    Metrics.timer("startup." + name).record(TimeUnit.MILLISECONDS.toNanos(at));
+  }
+
+  /** A phase that began at {@code startNanos} (System.nanoTime) and just ended. */
+  synchronized void end(String name, long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    entries.add(new Entry(name, TimeUnit.NANOSECONDS.toMillis(nanos), sinceJvmStart()));
+    Metrics.timer("startup." + name).record(nanos);
+  }
+
+  /** Logs every entry so far on one line, in completion order. */
+  synchronized void report() {
+    StringBuilder sb = new StringBuilder("Startup (ms since JVM start):");
+    for (Entry e : entries) {
+      sb.append(' ').append(e.name()).append('=');
+      if (e.durationMillis() >= 0) sb.append(e.durationMillis()).append(" (done at ").append(e.doneAtMillis()).append(')');
+      else sb.append(e.doneAtMillis());
+    }
+    LOG.log(System.Logger.Level.INFO, sb.toString());
+  }
+
+  private long sinceJvmStart() {
+    return System.currentTimeMillis() - jvmStart;
+  }
+}
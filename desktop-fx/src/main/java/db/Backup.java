@@ -0,0 +1,154 @@
+package db;
+
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Online copies of the live database and its outflow archive through SQLite's
+ * backup API. A copy runs on its own connection in steps of
+ * {@value #PAGES_PER_STEP} pages with a short pause after each, inside one
+ * read transaction: the app keeps committing to the WAL meanwhile, and the
+ * copy is the state of both files when it started.
+ */
+public final class Backup {
+
+  public static final String MAIN_FILE = "embassy.db";
+  public static final String ARCHIVE_FILE = "archive.db";
+
+  /** 256 pages is 1 MB at SQLite's default page size. */
+  private static final int PAGES_PER_STEP = 256;
+  private static final int BUSY_SLEEP_MILLIS = 50;
+  private static final int BUSY_RETRIES = 200;
+
+  /** Pages copied so far out of the total for one file. */
+  @FunctionalInterface
+  public interface Progress {
+    void pages(String file, long copied, long total);
+
+    Progress NONE = (file, copied, total) -> {};
+  }
+
+  private Backup() {}
+
+  /**
+   * Writes {@link #MAIN_FILE} and {@link #ARCHIVE_FILE} into {@code dir},
+   * sleeping {@code pauseMillis} after every step so the copy never hogs the
+   * disk. Returns the bytes written.
+   */
+  public static long copyTo(Path dir, long pauseMillis, Progress progress) {
+    try {
+      Files.createDirectories(dir);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + Db.userDbPath())) {
+      OutflowArchive.attach(c);
+      try (Statement st = c.createStatement()) {
+        st.execute("pragma busy_timeout=5000");
+      }
+      // Pin one read snapshot of both files for the whole copy. Without it the
+      // backup API starts over whenever another connection commits, which on
+      // a busy day could mean it never finishes.
+      c.setAutoCommit(false);
+      try (Statement st = c.createStatement()) {
+        st.executeQuery("select count(*) from main.sqlite_master").close();
+        st.executeQuery("select count(*) from " + OutflowArchive.SCHEMA + ".sqlite_master").close();
+      }
+      DB db = c.unwrap(SQLiteConnection.class).getDatabase();
+      copy(db, "main", dir.resolve(MAIN_FILE), pauseMillis, progress);
+      copy(db, OutflowArchive.SCHEMA, dir.resolve(ARCHIVE_FILE), pauseMillis, progress);
+      c.rollback();
+      return Files.size(dir.resolve(MAIN_FILE)) + Files.size(dir.resolve(ARCHIVE_FILE));
+    } catch (SQLException e) {
+      throw new RuntimeException("Backup to " + dir + " failed", e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void copy(DB db, String schema, Path dest, long pauseMillis, Progress progress) throws SQLException {
+    String name = dest.getFileName().toString();
+    int rc = db.backup(schema, dest.toString(), (remaining, total) -> {
+      progress.pages(name, total - remaining, total);
+      if (pauseMillis > 0 && remaining > 0) {
+        try {
+          Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, BUSY_SLEEP_MILLIS, BUSY_RETRIES, PAGES_PER_STEP);
+    if (rc != 0) throw new SQLException("Backup of " + schema + " stopped with SQLite code " + rc);
+  }
+
+  /**
+   * Makes a copied file standalone (rollback journal instead of WAL, so it is
+   * a single file) and runs PRAGMA integrity_check on it. Returns the
+   * problems found; empty means the file is sound.
+   */
+  public static List<String> verify(Path file) {
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + file);
+         Statement st = c.createStatement()) {
+      st.execute("pragma journal_mode=DELETE");
+      List<String> problems = new ArrayList<>();
+      try (ResultSet rs = st.executeQuery("pragma integrity_check")) {
+        while (rs.next()) {
+          String line = rs.getString(1);
+          if (!"ok".equals(line)) problems.add(line);
+        }
+      }
+      return problems;
+    } catch (SQLException e) {
+      return List.of(e.getMessage());
+    }
+  }
+
+  /**
+   * Replaces the live database and archive with the copies in {@code dir}
+   * while the app keeps running: the writer is held for the duration, the
+   * pages are written through the backup API, and the restored schema is
+   * migrated to this build. Readers see the restored data on their next
+   * statement.
+   */
+  public static void restoreFrom(Path dir, Progress progress) {
+    Path main = dir.resolve(MAIN_FILE);
+    Path archive = dir.resolve(ARCHIVE_FILE);
+    if (!Files.isRegularFile(main)) throw new IllegalArgumentException("No " + MAIN_FILE + " in " + dir);
+    try (Connection c = Db.writer()) {
+      DB db = c.unwrap(SQLiteConnection.class).getDatabase();
+      restore(db, "main", main, progress);
+      if (Files.isRegularFile(archive)) {
+        restore(db, OutflowArchive.SCHEMA, archive, progress);
+      } else {
+        // A copy from before archiving existed: its outflow table is complete.
+        try (Statement st = c.createStatement()) {
+          st.execute("delete from " + OutflowArchive.SCHEMA + ".outflow");
+        }
+      }
+      Migrations.migrate(c);
+      OutflowArchive.createSchema(c);
+    } catch (SQLException e) {
+      throw new RuntimeException("Restore from " + dir + " failed", e);
+    }
+  }
+
+  private static void restore(DB db, String schema, Path src, Progress progress) throws SQLException {
+    String name = src.getFileName().toString();
+    int rc = db.restore(schema, src.toString(),
+        (remaining, total) -> progress.pages(name, total - remaining, total),
+        BUSY_SLEEP_MILLIS, BUSY_RETRIES, PAGES_PER_STEP);
+    if (rc != 0) throw new SQLException("Restore of " + schema + " stopped with SQLite code " + rc);
+  }
+}
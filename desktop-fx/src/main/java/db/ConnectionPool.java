@@ -0,0 +1,182 @@
+package db;
+
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Timer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small fixed pool over one SQLite file: a single serialized writer plus a
+ * handful of read-only connections. All connections are opened once with
+ * the same pragmas and handed out as proxies whose close() returns them
+ * to the pool instead of closing the underlying handle. Statements created
+ * on them are traced (see {@link SqlTrace}).
+ */
+final class ConnectionPool implements AutoCloseable {
+
+  private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+
+  private static final Counter OPENED = Metrics.counter("db.connections.opened");
+  private static final Timer WRITER_WAIT = Metrics.timer("db.writer.acquire");
+  private static final Timer READER_WAIT = Metrics.timer("db.reader.acquire");
+
+  private final Connection writer;
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+  private final BlockingQueue<Connection> readers;
+  private final List<Connection> all = new ArrayList<>();
+  private volatile boolean closed;
+
+  /**
+   * Opens the writer, runs {@code setup} on it (schema migrations) and only
+   * then opens the readers, so they never start out with a stale schema cache.
+   * {@code onOpen} runs on every connection first (e.g. to ATTACH databases).
+   */
+  ConnectionPool(String url, int readerCount, Migration.Step onOpen, Migration.Step setup) throws SQLException {
+    try {
+      writer = open(url, false, onOpen);
+      setup.apply(writer);
+      readers = new ArrayBlockingQueue<>(readerCount);
+      for (int i = 0; i < readerCount; i++) readers.add(open(url, true, onOpen));
+    } catch (SQLException e) {
+      closeAll();
+      throw e;
+    }
+  }
+
+  private Connection open(String url, boolean readOnly, Migration.Step onOpen) throws SQLException {
+    Connection c = DriverManager.getConnection(url);
+    OPENED.inc();
+    all.add(c);
+    onOpen.apply(c);
+    try (Statement st = c.createStatement()) {
+      // WAL lets readers keep going while the writer commits.
+      st.execute("pragma journal_mode=WAL");
+      st.execute("pragma synchronous=NORMAL");
+      st.execute("pragma busy_timeout=5000");
+      st.execute("pragma cache_size=-16000");      // ~16 MB page cache per connection
+      st.execute("pragma mmap_size=268435456");    // 256 MB memory-mapped reads
+      st.execute("pragma temp_store=MEMORY");
+      if (readOnly) st.execute("pragma query_only=1");
+    }
+    return c;
+  }
+
+  /** Exclusive access to the single writer connection; close() releases it. */
+  Connection writer() {
+    ensureOpen();
+    try (Timer.Context t = WRITER_WAIT.start()) {
+      if (!writeLock.tryLock(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        throw new IllegalStateException("Timed out waiting for the database writer");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for the database writer", e);
+    }
+    // Only the outermost lease on this thread may end a transaction; an inner
+    // one (a repo call inside Db.inTransaction) would otherwise discard it.
+    return lease(writer, writeLock.getHoldCount() == 1, () -> writeLock.unlock());
+  }
+
+  /** One of the read-only connections; close() hands it back to the pool. */
+  Connection reader() {
+    ensureOpen();
+    // The writer thread may also read; reuse its connection so it sees its own
+    // uncommitted changes and does not wait on a reader it is starving.
+    if (writeLock.isHeldByCurrentThread()) {
+      writeLock.lock();
+      return lease(writer, false, () -> writeLock.unlock());
+    }
+    Connection c;
+    try (Timer.Context t = READER_WAIT.start()) {
+      c = readers.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for a database reader", e);
+    }
+    if (c == null) throw new IllegalStateException("Timed out waiting for a database reader");
+    return lease(c, true, () -> readers.add(c));
+  }
+
+  /**
+   * Wraps {@code target} for one borrower. Closing an {@code outermost} lease
+   * rolls back whatever transaction is still open; a nested lease on the same
+   * connection only releases its hold.
+   */
+  private Connection lease(Connection target, boolean outermost, Runnable release) {
+    InvocationHandler h = new InvocationHandler() {
+      private boolean released;
+
+      @Override
+      public Object invoke(Object proxy, java.lang.reflect.Method m, Object[] args) throws Throwable {
+        switch (m.getName()) {
+          case "close" -> {
+            if (!released) {
+              released = true;
+              try {
+                // Never hand a half-finished transaction to the next borrower.
+                if (outermost && !target.getAutoCommit()) {
+                  target.rollback();
+                  target.setAutoCommit(true);
+                }
+              } finally {
+                release.run();
+              }
+            }
+            return null;
+          }
+          case "isClosed" -> { return released || target.isClosed(); }
+          case "unwrap" -> {
+            if (((Class<?>) args[0]).isInstance(proxy)) return proxy;
+            return target.unwrap((Class<?>) args[0]);
+          }
+          default -> {
+            if (released) throw new SQLException("Connection already returned to the pool");
+            Object result;
+            try {
+              result = m.invoke(target, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+            // Statements are traced for timings and the slow-query log.
+            if (SqlTrace.createsStatement(m)) {
+              return SqlTrace.wrap((Statement) result, SqlTrace.preparedSql(m, args), target);
+            }
+            return result;
+          }
+        }
+      }
+    };
+    return (Connection) Proxy.newProxyInstance(
+        Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, h);
+  }
+
+  private void ensureOpen() {
+    if (closed) throw new IllegalStateException("Database pool is closed");
+  }
+
+  private void closeAll() {
+    for (Connection c : all) {
+      try { c.close(); } catch (SQLException ignore) {}
+    }
+    all.clear();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    closeAll();
+  }
+}
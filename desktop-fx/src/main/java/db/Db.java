@@ -3,9 +3,7 @@ package db;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 public final class Db {
 
@@ -14,7 +12,7 @@ public final class Db {
    * This is outside the application's bundled JAR/APP.
    * @return Path to the user's database directory (~/.embassyfx/embassy.db)
    */
-  private static Path userDbPath() {
+  static Path userDbPath() {
     // Create the directory ~/.embassyfx/
     Path dir = Path.of(System.getProperty("user.home"), ".embassyfx");
     try { Files.createDirectories(dir); } catch (Exception ignore) {}
@@ -50,101 +48,98 @@ public final class Db {
     }
   }
 
+  /** Reader connections kept open next to the single writer. */
+  private static final int READERS = 4;
+
+  private static volatile ConnectionPool pool;
+
   /**
-   * Contains your existing schema creation and migration logic.
-   * This ensures the tables exist and performs any necessary data migrations.
+   * Opens the pool on first use: makes sure the live DB file exists, opens
+   * the writer and reader connections and runs pending migrations once.
+   * After that, connect()/reader()/writer() are pure connection acquisition.
    */
-  private static void initialize(Connection c) throws SQLException {
-    // Run your existing init() logic here
-    try (Statement st = c.createStatement()) {
-      st.execute("""
-                create table if not exists products(
-                  sku text primary key,
-                  name text not null,
-                  price real not null,
-                  qty integer not null,
-                  unit text not null,
-                  category text not null,
-                  added_on text not null
-                )""");
-      st.execute("""
-                create table if not exists outflow(
-                  id integer primary key autoincrement,
-                  date_time text not null,
-                  user text not null,
-                  sku text not null,
-                  product_name text not null,
-                  unit text not null,
-                  qty integer not null,
-                  category text not null,
-                  price real not null,
-                  total_price real not null
-                )""");
-
-      // Ensure columns exist for older DBs (Migration logic)
-      try (Statement alter = c.createStatement()) {
-        alter.execute("alter table outflow add column category text not null default ''");
-      } catch (SQLException ignore) {}
-      try (Statement alter = c.createStatement()) {
-        alter.execute("alter table outflow add column price real not null default 0");
-      } catch (SQLException ignore) {}
-      try (Statement alter = c.createStatement()) {
-        alter.execute("alter table outflow add column total_price real not null default 0");
-      } catch (SQLException ignore) {}
-
-      // Backfill from products where possible
-      try (Statement fix = c.createStatement()) {
-        fix.execute("""
-                update outflow
-                set category = coalesce((
-                  select p.category from products p where p.sku = outflow.sku
-                ), '')
-                where trim(ifnull(category, '')) = ''
-              """);
-      }
-      try (Statement fix = c.createStatement()) {
-        fix.execute("""
-                update outflow
-                set price = coalesce((
-                  select p.price from products p where p.sku = outflow.sku
-                ), 0)
-                where ifnull(price, 0) = 0
-              """);
-      }
-      try (Statement fix = c.createStatement()) {
-        fix.execute("""
-                update outflow
-                set total_price = round(price * qty, 2)
-                where ifnull(total_price, 0) = 0
-              """);
+  private static ConnectionPool pool() {
+    ConnectionPool p = pool;
+    if (p != null) return p;
+    synchronized (Db.class) {
+      if (pool == null) {
+        // Step 1: Ensure the live DB file exists on the user's machine
+        ensureDatabaseFileExists();
+
+        // Step 2: Define the JDBC URL using the user-local path
+        String url = "jdbc:sqlite:" + userDbPath().toString();
+
+        try {
+          // Step 3: Open the long-lived connections with the outflow archive
+          // attached, bringing both schemas up to date on the writer first
+          // (a no-op once user_version is current)
+          pool = new ConnectionPool(url, READERS, OutflowArchive::attach, c -> {
+            Migrations.migrate(c);
+            OutflowArchive.createSchema(c);
+          });
+        } catch (SQLException e) {
+          throw new RuntimeException("Failed to connect or initialize database", e);
+        }
       }
+      return pool;
     }
   }
 
   /**
-   * The main connection method. It performs setup on first run, then connects.
-   * This replaces the old Db.connect() method and incorporates the setup steps.
+   * Serialized write access. Only one writer is handed out at a time; close()
+   * releases it (rolling back anything left uncommitted).
    */
-  public static Connection connect() {
-    // Step 1: Ensure the live DB file exists on the user's machine
-    ensureDatabaseFileExists();
+  public static Connection writer() {
+    return pool().writer();
+  }
 
-    // Step 2: Define the JDBC URL using the user-local path
-    String url = "jdbc:sqlite:" + userDbPath().toString();
+  /** A pooled read-only connection; close() returns it to the pool. */
+  public static Connection reader() {
+    return pool().reader();
+  }
 
-    try {
-      // Step 3: Get the connection
-      Connection c = DriverManager.getConnection(url);
+  /**
+   * Kept for existing callers: hands out the writer connection, which can
+   * both read and write.
+   */
+  public static Connection connect() {
+    return writer();
+  }
 
-      // Step 4: Run schema creation/migration logic (your old init())
-      initialize(c);
+  /** Unit of work run against the writer inside one transaction. */
+  @FunctionalInterface
+  public interface SqlWork<T> {
+    T run(Connection c) throws SQLException;
+  }
 
-      return c;
+  /**
+   * Runs {@code work} on the writer in a single transaction: commits when it
+   * returns, rolls back when it throws. SQLExceptions are rethrown unchecked
+   * like the rest of the data layer; runtime exceptions pass through as-is.
+   */
+  public static <T> T inTransaction(SqlWork<T> work) {
+    try (Connection c = writer()) {
+      c.setAutoCommit(false);
+      try {
+        T result = work.run(c);
+        c.commit();
+        return result;
+      } catch (SQLException | RuntimeException e) {
+        c.rollback();
+        throw e;
+      } finally {
+        c.setAutoCommit(true);
+      }
     } catch (SQLException e) {
-      throw new RuntimeException("Failed to connect or initialize database", e);
+      throw new RuntimeException(e);
     }
   }
 
-  // NOTE: Your original public static void init() is now private and called by connect().
-  // You should remove the old public init() method from your project.
-}
\ No newline at end of file
+  /** Closes every pooled connection; the next call reopens the pool. */
+  public static synchronized void shutdown() {
+    if (pool != null) {
+      pool.close();
+      pool = null;
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One ordered schema step. Steps run once, in version order, and the applied
+ * version is recorded in {@code PRAGMA user_version}. Each step must also be
+ * safe to run against a database that already has the change (older installs
+ * created the schema before versioning existed).
+ */
+record Migration(int version, String description, Step step) {
+
+  @FunctionalInterface
+  interface Step {
+    void apply(Connection c) throws SQLException;
+  }
+}
@@ -0,0 +1,509 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Versioned, run-once schema migrations keyed on {@code PRAGMA user_version}.
+ * Append new steps to {@link #ALL}; never reorder or edit shipped ones.
+ */
+public final class Migrations {
+
+  private static final System.Logger LOG = System.getLogger(Migrations.class.getName());
+
+  /** Timing for one step applied during this process. */
+  public record Applied(int version, String description, long millis) {}
+
+  private static final List<Migration> ALL = List.of(
+      new Migration(1, "create products and outflow tables", Migrations::createTables),
+      new Migration(2, "add outflow category/price/total_price columns", Migrations::addOutflowPricing),
+      new Migration(3, "backfill outflow category and prices from products", Migrations::backfillOutflowPricing),
+      new Migration(4, "index outflow on every sort key", Migrations::indexOutflowSortKeys),
+      new Migration(5, "full-text search tables for products and outflow", Migrations::createFullTextSearch),
+      new Migration(6, "daily outflow rollup", Migrations::createOutflowDaily),
+      new Migration(7, "store money as integer cents", Migrations::moneyAsCents),
+      new Migration(8, "store timestamps as epoch milliseconds", Migrations::epochTimestamps)
+  );
+
+  private static final List<Applied> applied = Collections.synchronizedList(new ArrayList<>());
+
+  private Migrations() {}
+
+  /** Steps applied since startup (empty when the schema was already current). */
+  public static List<Applied> applied() {
+    synchronized (applied) {
+      return List.copyOf(applied);
+    }
+  }
+
+  /** Highest version this build knows about. */
+  public static int latestVersion() {
+    return ALL.get(ALL.size() - 1).version();
+  }
+
+  /**
+   * Brings the schema up to {@link #latestVersion()}. Each step runs in its own
+   * BEGIN IMMEDIATE transaction, so a second process starting at the same time
+   * waits on SQLite's write lock and then sees the bumped version.
+   */
+  static void migrate(Connection c) throws SQLException {
+    if (userVersion(c) >= latestVersion()) return;
+
+    for (Migration m : ALL) {
+      try (Statement st = c.createStatement()) {
+        st.execute("begin immediate");
+        try {
+          if (userVersion(c) >= m.version()) {
+            st.execute("commit");
+            continue;
+          }
+          long start = System.nanoTime();
+          m.step().apply(c);
+          st.execute("pragma user_version = " + m.version());
+          st.execute("commit");
+          long ms = (System.nanoTime() - start) / 1_000_000;
+          applied.add(new Applied(m.version(), m.description(), ms));
+          LOG.log(System.Logger.Level.INFO, "Applied migration {0} ({1}) in {2} ms",
+              m.version(), m.description(), ms);
+        } catch (SQLException | RuntimeException e) {
+          try { st.execute("rollback"); } catch (SQLException ignore) {}
+          throw e;
+        }
+      }
+    }
+  }
+
+  static int userVersion(Connection c) throws SQLException {
+    try (Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("pragma user_version")) {
+      return rs.next() ? rs.getInt(1) : 0;
+    }
+  }
+
+  static boolean hasColumn(Connection c, String table, String column) throws SQLException {
+    try (Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("pragma table_info(" + table + ")")) {
+      while (rs.next()) {
+        if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+      }
+      return false;
+    }
+  }
+
+  // --- Steps ----------------------------------------------------------------
+
+  private static void createTables(Connection c) throws SQLException {
+    try (Statement st = c.createStatement()) {
+      st.execute("""
+                create table if not exists products(
+                  sku text primary key,
+                  name text not null,
+                  price real not null,
+                  qty integer not null,
+                  unit text not null,
+                  category text not null,
+                  added_on text not null
+                )""");
+      st.execute("""
+                create table if not exists outflow(
+                  id integer primary key autoincrement,
+                  date_time text not null,
+                  user text not null,
+                  sku text not null,
+                  product_name text not null,
+                  unit text not null,
+                  qty integer not null,
+                  category text not null,
+                  price real not null,
+                  total_price real not null
+                )""");
+    }
+  }
+
+  // Older DBs were created before outflow carried category and pricing.
+  private static void addOutflowPricing(Connection c) throws SQLException {
+    try (Statement st = c.createStatement()) {
+      if (!hasColumn(c, "outflow", "category")) {
+        st.execute("alter table outflow add column category text not null default ''");
+      }
+      if (!hasColumn(c, "outflow", "price")) {
+        st.execute("alter table outflow add column price real not null default 0");
+      }
+      if (!hasColumn(c, "outflow", "total_price")) {
+        st.execute("alter table outflow add column total_price real not null default 0");
+      }
+    }
+  }
+
+  // Backfill from products where possible
+  private static void backfillOutflowPricing(Connection c) throws SQLException {
+    try (Statement st = c.createStatement()) {
+      st.execute("""
+                update outflow
+                set category = coalesce((
+                  select p.category from products p where p.sku = outflow.sku
+                ), '')
+                where trim(ifnull(category, '')) = ''
+              """);
+      st.execute("""
+                update outflow
+                set price = coalesce((
+                  select p.price from products p where p.sku = outflow.sku
+                ), 0)
+                where ifnull(price, 0) = 0
+              """);
+      st.execute("""
+                update outflow
+                set total_price = round(price * qty, 2)
+                where ifnull(total_price, 0) = 0
+              """);
+    }
+  }
+
+  // One index per OutflowRepo.ORDER_BY key, each ending in id so keyset pages
+  // (sort value, id) and plain sorted listings are both served in index order
+  // without a temp B-tree. Qty sorts on an expression, so it gets an
+  // expression index. products.sku lookups already use the primary key.
+  private static void indexOutflowSortKeys(Connection c) throws SQLException {
+    try (Statement st = c.createStatement()) {
+      st.execute("create index if not exists ix_outflow_date_time on outflow(date_time, id)");
+      st.execute("create index if not exists ix_outflow_user on outflow(user, id)");
+      st.execute("create index if not exists ix_outflow_sku on outflow(sku, id)");
+      st.execute("create index if not exists ix_outflow_product_name on outflow(product_name, id)");
+      st.execute("create index if not exists ix_outflow_unit on outflow(unit, id)");
+      st.execute("create index if not exists ix_outflow_category on outflow(category, id)");
+      st.execute("create index if not exists ix_outflow_qty on outflow(CAST(qty AS INTEGER), id)");
+      st.execute("create index if not exists ix_outflow_price on outflow(price, id)");
+      st.execute("create index if not exists ix_outflow_total_price on outflow(total_price, id)");
+    }
+  }
+
+  // FTS5 external-content tables: the text lives only in products/outflow and
+  // the triggers keep the search index in step with every insert, update and
+  // delete. 'rebuild' indexes whatever rows already exist.
+  private static void createFullTextSearch(Connection c) throws SQLException {
+    try (Statement st = c.createStatement()) {
+      st.execute("""
+                create virtual table if not exists products_fts using fts5(
+                  sku, name, category,
+                  content='products', content_rowid='rowid', prefix='2 3'
+                )""");
+      createProductsFtsTriggers(st);
+      st.execute("insert into products_fts(products_fts) values('rebuild')");
+
+      st.execute("""
+                create virtual table if not exists outflow_fts using fts5(
+                  user, sku, product_name, category,
+                  content='outflow', content_rowid='id', prefix='2 3'
+                )""");
+      createOutflowFtsTriggers(st);
+      st.execute("insert into outflow_fts(outflow_fts) values('rebuild')");
+    }
+  }
+
+  static void createProductsFtsTriggers(Statement st) throws SQLException {
+    st.execute("""
+              create trigger if not exists products_fts_ai after insert on products begin
+                insert into products_fts(rowid, sku, name, category)
+                values (new.rowid, new.sku, new.name, new.category);
+              end""");
+    st.execute("""
+              create trigger if not exists products_fts_ad after delete on products begin
+                insert into products_fts(products_fts, rowid, sku, name, category)
+                values ('delete', old.rowid, old.sku, old.name, old.category);
+              end""");
+    st.execute("""
+              create trigger if not exists products_fts_au after update of sku, name, category on products begin
+                insert into products_fts(products_fts, rowid, sku, name, category)
+                values ('delete', old.rowid, old.sku, old.name, old.category);
+                insert into products_fts(rowid, sku, name, category)
+                values (new.rowid, new.sku, new.name, new.category);
+              end""");
+  }
+
+  static void createOutflowFtsTriggers(Statement st) throws SQLException {
+    createOutflowFtsTriggers(st, "main");
+  }
+
+  /** The outflow FTS triggers in {@code schema}; trigger bodies resolve tables in that schema. */
+  static void createOutflowFtsTriggers(Statement st, String schema) throws SQLException {
+    st.execute("""
+              create trigger if not exists %s.outflow_fts_ai after insert on outflow begin
+                insert into outflow_fts(rowid, user, sku, product_name, category)
+                values (new.id, new.user, new.sku, new.product_name, new.category);
+              end""".formatted(schema));
+    st.execute("""
+              create trigger if not exists %s.outflow_fts_ad after delete on outflow begin
+                insert into outflow_fts(outflow_fts, rowid, user, sku, product_name, category)
+                values ('delete', old.id, old.user, old.sku, old.product_name, old.category);
+              end""".formatted(schema));
+    st.execute("""
+              create trigger if not exists %s.outflow_fts_au after update of user, sku, product_name, category on outflow begin
+                insert into outflow_fts(outflow_fts, rowid, user, sku, product_name, category)
+                values ('delete', old.id, old.user, old.sku, old.product_name, old.category);
+                insert into outflow_fts(rowid, user, sku, product_name, category)
+                values (new.id, new.user, new.sku, new.product_name, new.category);
+              end""".formatted(schema));
+  }
+
+  // Per-day sums of issued qty and value by SKU, category and user. The insert
+  // trigger adds each new outflow row in the same transaction as the insert;
+  // OutflowRepo.rebuildDaily() recomputes it from scratch.
+  private static void createOutflowDaily(Connection c) throws SQLException {
+    try (Statement st = c.createStatement()) {
+      st.execute("""
+                create table if not exists outflow_daily(
+                  day text not null,
+                  sku text not null,
+                  category text not null,
+                  user text not null,
+                  qty integer not null,
+                  total_price real not null,
+                  entries integer not null,
+                  primary key(day, sku, category, user)
+                ) without rowid""");
+      st.execute("""
+                create trigger if not exists outflow_daily_ai after insert on outflow begin
+                  insert into outflow_daily(day, sku, category, user, qty, total_price, entries)
+                  values (substr(new.date_time, 1, 10), new.sku, new.category, new.user, new.qty, new.total_price, 1)
+                  on conflict(day, sku, category, user) do update set
+                    qty = qty + excluded.qty,
+                    total_price = total_price + excluded.total_price,
+                    entries = entries + 1;
+                end""");
+      st.execute("delete from outflow_daily");
+      st.execute("""
+                insert into outflow_daily(day, sku, category, user, qty, total_price, entries)
+                select substr(date_time, 1, 10), sku, category, user, sum(qty), sum(total_price), count(*)
+                from outflow
+                group by 1, 2, 3, 4""");
+    }
+  }
+
+  // REAL prices drifted (0.1 + 0.2) and every read parsed a decimal string.
+  // SQLite cannot change a column type in place, so each table is rebuilt
+  // with INTEGER cent columns, rows are copied over (keeping rowids/ids so
+  // the FTS indexes still line up) and the dropped indexes and triggers are
+  // recreated against the new columns.
+  private static void moneyAsCents(Connection c) throws SQLException {
+    try (Statement st = c.createStatement()) {
+      st.execute("""
+                create table products_new(
+                  sku text primary key,
+                  name text not null,
+                  price_cents integer not null,
+                  qty integer not null,
+                  unit text not null,
+                  category text not null,
+                  added_on text not null
+                )""");
+      st.execute("""
+                insert into products_new(rowid, sku, name, price_cents, qty, unit, category, added_on)
+                select rowid, sku, name, cast(round(ifnull(price, 0) * 100) as integer), qty, unit, category, added_on
+                from products""");
+      st.execute("drop table products");
+      st.execute("alter table products_new rename to products");
+      createProductsFtsTriggers(st);
+      st.execute("insert into products_fts(products_fts) values('rebuild')");
+
+      st.execute("""
+                create table outflow_new(
+                  id integer primary key autoincrement,
+                  date_time text not null,
+                  user text not null,
+                  sku text not null,
+                  product_name text not null,
+                  unit text not null,
+                  qty integer not null,
+                  category text not null default '',
+                  price_cents integer not null default 0,
+                  total_cents integer not null default 0
+                )""");
+      // Old rows with a zero total were shown as price * qty; keep that value.
+      st.execute("""
+                insert into outflow_new(id, date_time, user, sku, product_name, unit, qty, category, price_cents, total_cents)
+                select id, date_time, user, sku, product_name, unit, qty, coalesce(category, ''),
+                       cast(round(ifnull(price, 0) * 100) as integer),
+                       cast(round(case when ifnull(total_price, 0) = 0 then ifnull(price, 0) * qty
+                                       else total_price end * 100) as integer)
+                from outflow""");
+      st.execute("drop table outflow");
+      st.execute("alter table outflow_new rename to outflow");
+      createOutflowIndexes(st);
+      createOutflowFtsTriggers(st);
+      st.execute("insert into outflow_fts(outflow_fts) values('rebuild')");
+
+      st.execute("drop table if exists outflow_daily");
+      st.execute("""
+                create table outflow_daily(
+                  day text not null,
+                  sku text not null,
+                  category text not null,
+                  user text not null,
+                  qty integer not null,
+                  total_cents integer not null,
+                  entries integer not null,
+                  primary key(day, sku, category, user)
+                ) without rowid""");
+      st.execute("""
+                create trigger outflow_daily_ai after insert on outflow begin
+                  insert into outflow_daily(day, sku, category, user, qty, total_cents, entries)
+                  values (substr(new.date_time, 1, 10), new.sku, new.category, new.user, new.qty, new.total_cents, 1)
+                  on conflict(day, sku, category, user) do update set
+                    qty = qty + excluded.qty,
+                    total_cents = total_cents + excluded.total_cents,
+                    entries = entries + 1;
+                end""");
+      st.execute("""
+                insert into outflow_daily(day, sku, category, user, qty, total_cents, entries)
+                select substr(date_time, 1, 10), sku, category, user, sum(qty), sum(total_cents), count(*)
+                from outflow
+                group by 1, 2, 3, 4""");
+    }
+  }
+
+  // ISO text timestamps were parsed on every row read and compared as
+  // strings. They were written in local time, so 'utc' converts them to
+  // epoch milliseconds; tables are rebuilt because a TEXT column would turn
+  // the integers back into text. Blank or unreadable legacy text has no
+  // julianday; those rows get 0 (1970-01-01) instead of failing the NOT NULL
+  // copy, and are counted in the log.
+  private static void epochTimestamps(Connection c) throws SQLException {
+    String toMillis = "coalesce(cast(round((julianday(%s, 'utc') - 2440587.5) * 86400000) as integer), 0)";
+    logUnreadableTimestamps(c, "products", "added_on");
+    logUnreadableTimestamps(c, "outflow", "date_time");
+    try (Statement st = c.createStatement()) {
+      st.execute("""
+                create table products_new(
+                  sku text primary key,
+                  name text not null,
+                  price_cents integer not null,
+                  qty integer not null,
+                  unit text not null,
+                  category text not null,
+                  added_on integer not null
+                )""");
+      st.execute("""
+                insert into products_new(rowid, sku, name, price_cents, qty, unit, category, added_on)
+                select rowid, sku, name, price_cents, qty, unit, category, %s
+                from products""".formatted(toMillis.formatted("added_on")));
+      st.execute("drop table products");
+      st.execute("alter table products_new rename to products");
+      createProductIndexes(st);
+      createProductsFtsTriggers(st);
+
+      st.execute("""
+                create table outflow_new(
+                  id integer primary key autoincrement,
+                  date_time integer not null,
+                  user text not null,
+                  sku text not null,
+                  product_name text not null,
+                  unit text not null,
+                  qty integer not null,
+                  category text not null default '',
+                  price_cents integer not null default 0,
+                  total_cents integer not null default 0
+                )""");
+      st.execute("""
+                insert into outflow_new(id, date_time, user, sku, product_name, unit, qty, category, price_cents, total_cents)
+                select id, %s, user, sku, product_name, unit, qty, category, price_cents, total_cents
+                from outflow""".formatted(toMillis.formatted("date_time")));
+      st.execute("drop table outflow");
+      st.execute("alter table outflow_new rename to outflow");
+      createOutflowIndexes(st);
+      createOutflowFtsTriggers(st);
+
+      // Rowids are unchanged, so the FTS indexes need no rebuild; the
+      // rollup is recreated with days derived from the epoch value.
+      st.execute("drop table if exists outflow_daily");
+      createOutflowDailyTable(st);
+    }
+  }
+
+  private static void logUnreadableTimestamps(Connection c, String table, String column) throws SQLException {
+    try (Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("select count(*) from " + table + " where julianday(" + column + ") is null")) {
+      int n = rs.next() ? rs.getInt(1) : 0;
+      if (n > 0) {
+        LOG.log(System.Logger.Level.WARNING, "{0} {1} rows have an unreadable {2}; stored as 1970-01-01",
+            n, table, column);
+      }
+    }
+  }
+
+  // --- Current schema objects -------------------------------------------------
+  // Shared by the latest migrations and repair paths. Earlier steps keep their
+  // own frozen SQL so they still run against the schema of their time.
+
+  /** Supports the inventory "newest/oldest first" sort orders. */
+  static void createProductIndexes(Statement st) throws SQLException {
+    st.execute("create index if not exists ix_products_added_on on products(added_on)");
+  }
+
+  /** One index per OutflowRepo.ORDER_BY key, each ending in id for keyset paging. */
+  static void createOutflowIndexes(Statement st) throws SQLException {
+    createOutflowIndexes(st, "main");
+  }
+
+  /** The same indexes on the outflow table of {@code schema} (e.g. the attached archive). */
+  static void createOutflowIndexes(Statement st, String schema) throws SQLException {
+    String on = schema + ".";
+    st.execute("create index if not exists " + on + "ix_outflow_date_time on outflow(date_time, id)");
+    st.execute("create index if not exists " + on + "ix_outflow_user on outflow(user, id)");
+    st.execute("create index if not exists " + on + "ix_outflow_sku on outflow(sku, id)");
+    st.execute("create index if not exists " + on + "ix_outflow_product_name on outflow(product_name, id)");
+    st.execute("create index if not exists " + on + "ix_outflow_unit on outflow(unit, id)");
+    st.execute("create index if not exists " + on + "ix_outflow_category on outflow(category, id)");
+    st.execute("create index if not exists " + on + "ix_outflow_qty on outflow(CAST(qty AS INTEGER), id)");
+    st.execute("create index if not exists " + on + "ix_outflow_price on outflow(price_cents, id)");
+    st.execute("create index if not exists " + on + "ix_outflow_total_price on outflow(total_cents, id)");
+  }
+
+  /** External-content FTS5 index over the outflow table of {@code schema}. */
+  static void createOutflowFtsTable(Statement st, String schema) throws SQLException {
+    st.execute("""
+              create virtual table if not exists %s.outflow_fts using fts5(
+                user, sku, product_name, category,
+                content='outflow', content_rowid='id', prefix='2 3'
+              )""".formatted(schema));
+  }
+
+  /** Creates outflow_daily with its insert trigger and fills it from outflow. */
+  static void createOutflowDailyTable(Statement st) throws SQLException {
+    st.execute("""
+              create table if not exists outflow_daily(
+                day text not null,
+                sku text not null,
+                category text not null,
+                user text not null,
+                qty integer not null,
+                total_cents integer not null,
+                entries integer not null,
+                primary key(day, sku, category, user)
+              ) without rowid""");
+    st.execute("""
+              create trigger if not exists outflow_daily_ai after insert on outflow begin
+                insert into outflow_daily(day, sku, category, user, qty, total_cents, entries)
+                values (date(new.date_time / 1000, 'unixepoch', 'localtime'), new.sku, new.category, new.user, new.qty, new.total_cents, 1)
+                on conflict(day, sku, category, user) do update set
+                  qty = qty + excluded.qty,
+                  total_cents = total_cents + excluded.total_cents,
+                  entries = entries + 1;
+              end""");
+    st.execute("delete from outflow_daily");
+    st.execute(OUTFLOW_DAILY_BACKFILL);
+  }
+
+  /** Recomputes outflow_daily from the outflow table. */
+  public static final String OUTFLOW_DAILY_BACKFILL = """
+            insert into outflow_daily(day, sku, category, user, qty, total_cents, entries)
+            select date(date_time / 1000, 'unixepoch', 'localtime'), sku, category, user, sum(qty), sum(total_cents), count(*)
+            from outflow
+            group by 1, 2, 3, 4""";
+}
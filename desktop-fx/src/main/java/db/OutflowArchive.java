@@ -0,0 +1,132 @@
+package db;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Cold storage for old outflow rows: a second SQLite file,
+ * {@code ~/.embassyfx/archive.db}, attached to every pooled connection as
+ * schema {@value #SCHEMA}. Its outflow table has the same columns, sort
+ * indexes and full-text index as the hot one and keeps the original ids, so
+ * queries can UNION ALL both tables and merge them in index order. The daily
+ * rollup stays in the main file and keeps counting archived rows.
+ */
+public final class OutflowArchive {
+
+  public static final String SCHEMA = "archive";
+
+  /** Archive layout version, kept in the archive file's own user_version. */
+  private static final int VERSION = 1;
+
+  /** A VACUUM runs once the file has grown by this factor since the last one. */
+  private static final double REGROW = 1.5;
+
+  private OutflowArchive() {}
+
+  /** Archive location; follows user.home like the database itself. */
+  public static Path file() {
+    return Path.of(System.getProperty("user.home"), ".embassyfx", "archive.db");
+  }
+
+  /** Attaches the archive (SQLite creates the file on first use) with the main file's durability settings. */
+  static void attach(Connection c) throws SQLException {
+    attach(c, file());
+  }
+
+  static void attach(Connection c, Path file) throws SQLException {
+    try (PreparedStatement ps = c.prepareStatement("attach database ? as " + SCHEMA)) {
+      ps.setString(1, file.toString());
+      ps.execute();
+    }
+    try (Statement st = c.createStatement()) {
+      st.execute("pragma " + SCHEMA + ".journal_mode=WAL");
+      st.execute("pragma " + SCHEMA + ".synchronous=NORMAL");
+    }
+  }
+
+  /** Creates the archive tables on the writer; a no-op once the archive is at {@link #VERSION}. */
+  static void createSchema(Connection c) throws SQLException {
+    try (Statement st = c.createStatement()) {
+      if (pragmaLong(st, "pragma " + SCHEMA + ".user_version") >= VERSION) return;
+      st.execute("begin immediate");
+      try {
+        st.execute("""
+                  create table if not exists %s.outflow(
+                    id integer primary key,
+                    date_time integer not null,
+                    user text not null,
+                    sku text not null,
+                    product_name text not null,
+                    unit text not null,
+                    qty integer not null,
+                    category text not null default '',
+                    price_cents integer not null default 0,
+                    total_cents integer not null default 0
+                  )""".formatted(SCHEMA));
+        Migrations.createOutflowIndexes(st, SCHEMA);
+        Migrations.createOutflowFtsTable(st, SCHEMA);
+        Migrations.createOutflowFtsTriggers(st, SCHEMA);
+        st.execute("create table if not exists " + SCHEMA
+            + ".archive_meta(key text primary key, value integer not null) without rowid");
+        st.execute("pragma " + SCHEMA + ".user_version = " + VERSION);
+        st.execute("commit");
+      } catch (SQLException | RuntimeException e) {
+        try { st.execute("rollback"); } catch (SQLException ignore) {}
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Merges the full-text segments that archive runs append and, once the file
+   * has grown by half since it was last rebuilt (or a fifth of it is free
+   * pages), VACUUMs it so index pages are packed again. Rows only ever arrive
+   * in batches, so this is cheap to call after every run.
+   *
+   * @return true when a VACUUM ran
+   */
+  public static boolean compact() {
+    try (Connection c = Db.writer()) {
+      long pages;
+      try (Statement st = c.createStatement()) {
+        st.execute("insert into " + SCHEMA + ".outflow_fts(outflow_fts) values('optimize')");
+        pages = pragmaLong(st, "pragma " + SCHEMA + ".page_count");
+        long free = pragmaLong(st, "pragma " + SCHEMA + ".freelist_count");
+        if (pages < meta(c, "compacted_pages") * REGROW && free * 5 < pages) return false;
+      }
+      // VACUUM refuses to run while any other statement on the connection is open.
+      try (Statement st = c.createStatement()) {
+        st.execute("vacuum " + SCHEMA);
+        pages = pragmaLong(st, "pragma " + SCHEMA + ".page_count");
+      }
+      try (PreparedStatement ps = c.prepareStatement(
+          "insert into " + SCHEMA + ".archive_meta(key, value) values('compacted_pages', ?) "
+              + "on conflict(key) do update set value = excluded.value")) {
+        ps.setLong(1, pages);
+        ps.executeUpdate();
+      }
+      return true;
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static long meta(Connection c, String key) throws SQLException {
+    try (PreparedStatement ps = c.prepareStatement("select value from " + SCHEMA + ".archive_meta where key = ?")) {
+      ps.setString(1, key);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? rs.getLong(1) : 0;
+      }
+    }
+  }
+
+  private static long pragmaLong(Statement st, String pragma) throws SQLException {
+    try (ResultSet rs = st.executeQuery(pragma)) {
+      return rs.next() ? rs.getLong(1) : 0;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package db;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+
+/**
+ * Rolling log of slow statements in {@code ~/.embassyfx/slow-queries.log}.
+ * Each entry has the timings, row and bind counts, the calling thread, the
+ * SQL and its EXPLAIN QUERY PLAN. Bound values are never written. The file
+ * rolls over at 1 MB and the last {@value #KEEP} old files are kept.
+ */
+final class SlowQueryLog {
+
+  private static final System.Logger LOG = System.getLogger(SlowQueryLog.class.getName());
+  private static final long MAX_BYTES = 1024 * 1024;
+  private static final int KEEP = 3;
+
+  private SlowQueryLog() {}
+
+  /** Log file location; follows user.home like the database itself. */
+  static Path file() {
+    return Path.of(System.getProperty("user.home"), ".embassyfx", "slow-queries.log");
+  }
+
+  static void record(SqlTrace.Execution e, Connection raw) {
+    // The plan is taken on the same connection right after the statement,
+    // so it reflects the schema and statistics the statement actually saw.
+    String plan = SqlTrace.plan(raw, e.sql);
+    StringBuilder entry = new StringBuilder()
+        .append(LocalDateTime.now())
+        .append(String.format("  total=%.1f ms exec=%.1f ms fetch=%.1f ms rows=%d binds=%d",
+            e.totalNanos() / 1e6, e.execNanos / 1e6, e.fetchNanos / 1e6, e.rows, e.binds));
+    if (e.batch > 0) entry.append(" batch=").append(e.batch);
+    entry.append(" thread=").append(Thread.currentThread().getName()).append('\n')
+        .append("    ").append(e.sql.strip().replaceAll("\\s+", " ")).append('\n');
+    if (!plan.isEmpty()) entry.append("    plan:\n").append(plan);
+    entry.append('\n');
+    append(entry.toString());
+  }
+
+  private static synchronized void append(String entry) {
+    Path file = file();
+    try {
+      Files.createDirectories(file.getParent());
+      if (Files.exists(file) && Files.size(file) + entry.length() > MAX_BYTES) roll(file);
+      Files.writeString(file, entry, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException ex) {
+      LOG.log(System.Logger.Level.WARNING, "Could not write slow query log " + file, ex);
+    }
+  }
+
+  /** slow-queries.log becomes .1.log, .1 becomes .2, and so on; the oldest is dropped. */
+  private static void roll(Path file) throws IOException {
+    String base = file.getFileName().toString().replace(".log", "");
+    Files.deleteIfExists(file.resolveSibling(base + "." + KEEP + ".log"));
+    for (int i = KEEP - 1; i >= 1; i--) {
+      Path from = file.resolveSibling(base + "." + i + ".log");
+      if (Files.exists(from)) {
+        Files.move(from, file.resolveSibling(base + "." + (i + 1) + ".log"), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    Files.move(file, file.resolveSibling(base + ".1.log"), StandardCopyOption.REPLACE_EXISTING);
+  }
+}
@@ -0,0 +1,228 @@
+package db;
+
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Timer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracing wrappers for the statements handed out by pooled connections. Each
+ * execution records the SQL text, bind count, time spent executing and time
+ * spent stepping through rows, and the row count. Executions slower than
+ * {@code embassyfx.slowQueryMillis} (default 200 ms) are written to the
+ * {@link SlowQueryLog} together with their query plan.
+ */
+final class SqlTrace {
+
+  static final long SLOW_NANOS = Long.getLong("embassyfx.slowQueryMillis", 200) * 1_000_000L;
+
+  private static final Timer STATEMENTS = Metrics.timer("db.statement");
+  private static final Counter SLOW = Metrics.counter("db.statements.slow");
+
+  private static final Method NEXT;
+  static {
+    try {
+      NEXT = ResultSet.class.getMethod("next");
+    } catch (NoSuchMethodException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private SqlTrace() {}
+
+  /** One run of a statement; finished when its result set or statement closes. */
+  static final class Execution {
+    final String sql;
+    final int binds;
+    final int batch;
+    final long execNanos;
+    long fetchNanos;
+    long rows = -1;
+    private boolean finished;
+
+    Execution(String sql, int binds, int batch, long execNanos) {
+      this.sql = sql;
+      this.binds = binds;
+      this.batch = batch;
+      this.execNanos = execNanos;
+    }
+
+    long totalNanos() {
+      return execNanos + fetchNanos;
+    }
+  }
+
+  /**
+   * Wraps a statement created on {@code raw}. {@code sql} is the prepared text,
+   * or null for plain statements (the text then comes with each execute call).
+   */
+  static Statement wrap(Statement target, String sql, Connection raw) {
+    Class<?> type = target instanceof CallableStatement ? CallableStatement.class
+        : target instanceof PreparedStatement ? PreparedStatement.class
+        : Statement.class;
+    return (Statement) Proxy.newProxyInstance(
+        Statement.class.getClassLoader(), new Class<?>[]{type}, new StatementHandler(target, sql, raw));
+  }
+
+  private static final class StatementHandler implements InvocationHandler {
+    private final Statement target;
+    private final String preparedSql;
+    private final Connection raw;
+    private int binds;
+    private int batch;
+    private Execution current;
+
+    StatementHandler(Statement target, String preparedSql, Connection raw) {
+      this.target = target;
+      this.preparedSql = preparedSql;
+      this.raw = raw;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+      String name = m.getName();
+      if (name.startsWith("execute")) return execute(m, args);
+      if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer i) {
+        binds = Math.max(binds, i);
+      } else if (name.equals("addBatch")) {
+        batch++;
+      } else if (name.equals("close")) {
+        // Close first: the plan query must not run while this one is active.
+        Object r = call(target, m, args);
+        finish(current, raw);
+        return r;
+      } else if (name.equals("unwrap") && ((Class<?>) args[0]).isInstance(proxy)) {
+        return proxy;
+      }
+      return call(target, m, args);
+    }
+
+    private Object execute(Method m, Object[] args) throws Throwable {
+      finish(current, raw);
+      String sql = args != null && args.length > 0 && args[0] instanceof String s ? s
+          : preparedSql != null ? preparedSql : "(statement batch)";
+      long start = System.nanoTime();
+      Object result = call(target, m, args);
+      Execution e = new Execution(sql, binds, batch, System.nanoTime() - start);
+      batch = 0;
+      if (result instanceof ResultSet rs) {
+        current = e;
+        return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+            new Class<?>[]{ResultSet.class}, new ResultSetHandler(rs, e, raw));
+      }
+      if (result instanceof Integer n) e.rows = n;
+      else if (result instanceof Long n) e.rows = n;
+      else if (result instanceof int[] counts) e.rows = sum(counts);
+      else if (result instanceof long[] counts) e.rows = sum(counts);
+      current = null;
+      finish(e, raw);
+      return result;
+    }
+  }
+
+  private static final class ResultSetHandler implements InvocationHandler {
+    private final ResultSet target;
+    private final Execution execution;
+    private final Connection raw;
+
+    ResultSetHandler(ResultSet target, Execution execution, Connection raw) {
+      this.target = target;
+      this.execution = execution;
+      this.raw = raw;
+      execution.rows = 0;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+      if (m.equals(NEXT)) {
+        long start = System.nanoTime();
+        boolean more = target.next();
+        execution.fetchNanos += System.nanoTime() - start;
+        if (more) execution.rows++;
+        return more;
+      }
+      if (m.getName().equals("close")) {
+        Object r = call(target, m, args);
+        finish(execution, raw);
+        return r;
+      }
+      return call(target, m, args);
+    }
+  }
+
+  private static void finish(Execution e, Connection raw) {
+    if (e == null || e.finished) return;
+    e.finished = true;
+    long total = e.totalNanos();
+    STATEMENTS.record(total);
+    if (total >= SLOW_NANOS) {
+      SLOW.inc();
+      SlowQueryLog.record(e, raw);
+    }
+  }
+
+  private static Object call(Object target, Method m, Object[] args) throws Throwable {
+    try {
+      return m.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static long sum(int[] counts) {
+    long n = 0;
+    for (int c : counts) n += Math.max(0, c);
+    return n;
+  }
+
+  private static long sum(long[] counts) {
+    long n = 0;
+    for (long c : counts) n += Math.max(0, c);
+    return n;
+  }
+
+  /** SQL from a Connection.prepareStatement/prepareCall/createStatement call, or null for plain statements. */
+  static String preparedSql(Method m, Object[] args) {
+    return (m.getName().startsWith("prepare") && args != null && args[0] instanceof String s) ? s : null;
+  }
+
+  /** True for the Connection methods whose result should be traced. */
+  static boolean createsStatement(Method m) {
+    String n = m.getName();
+    return n.equals("createStatement") || n.equals("prepareStatement") || n.equals("prepareCall");
+  }
+
+  /** Runs EXPLAIN QUERY PLAN for {@code sql} on the raw connection; empty when it has no plan. */
+  static String plan(Connection raw, String sql) {
+    String head = sql.stripLeading().toLowerCase();
+    if (!(head.startsWith("select") || head.startsWith("with") || head.startsWith("insert")
+        || head.startsWith("update") || head.startsWith("delete") || head.startsWith("replace"))) {
+      return "";
+    }
+    StringBuilder out = new StringBuilder();
+    try (Statement st = raw.createStatement();
+         ResultSet rs = st.executeQuery("explain query plan " + sql)) {
+      Map<Integer, Integer> depth = new HashMap<>();
+      while (rs.next()) {
+        int d = depth.getOrDefault(rs.getInt("parent"), -1) + 1;
+        depth.put(rs.getInt("id"), d);
+        out.append("  ".repeat(d + 2)).append(rs.getString("detail")).append('\n');
+      }
+    } catch (SQLException e) {
+      out.append("    (no plan: ").append(e.getMessage()).append(")\n");
+    }
+    return out.toString();
+  }
+}
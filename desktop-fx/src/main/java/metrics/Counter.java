@@ -0,0 +1,34 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Monotonic event count, cheap enough to bump once per row read. */
+public final class Counter implements CounterMXBean {
+
+  private final String name;
+  private final LongAdder count = new LongAdder();
+
+  Counter(String name) {
+    this.name = name;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public void inc() {
+    count.increment();
+  }
+
+  public void add(long n) {
+    count.add(n);
+  }
+
+  @Override public long getCount() {
+    return count.sum();
+  }
+
+  @Override public void reset() {
+    count.reset();
+  }
+}
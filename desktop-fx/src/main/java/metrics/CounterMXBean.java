@@ -0,0 +1,7 @@
+package metrics;
+
+/** JMX view of a {@link Counter}. */
+public interface CounterMXBean {
+  long getCount();
+  void reset();
+}
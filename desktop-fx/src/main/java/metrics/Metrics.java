@@ -0,0 +1,72 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of timers and counters. Every metric is also
+ * registered as an MXBean under {@code tz.embassy:type=Timer|Counter,name=...},
+ * so JConsole attached to a running workstation shows the same numbers as
+ * the Diagnostics tab.
+ *
+ * <p>Names are dotted paths, e.g. {@code repo.ProductRepo.find} or
+ * {@code db.rows.read}. Callers keep the returned instance in a static field;
+ * lookups only happen at class initialization.
+ */
+public final class Metrics {
+
+  private static final System.Logger LOG = System.getLogger(Metrics.class.getName());
+  private static final String DOMAIN = "tz.embassy";
+
+  private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+  private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+  private Metrics() {}
+
+  public static Timer timer(String name) {
+    return timers.computeIfAbsent(name, n -> register("Timer", n, new Timer(n)));
+  }
+
+  public static Counter counter(String name) {
+    return counters.computeIfAbsent(name, n -> register("Counter", n, new Counter(n)));
+  }
+
+  /** All timers by name. */
+  public static List<Timer.Snapshot> timers() {
+    return timers.values().stream()
+        .map(Timer::snapshot)
+        .sorted(Comparator.comparing(Timer.Snapshot::name))
+        .toList();
+  }
+
+  /** All counters by name. */
+  public static List<Counter> counters() {
+    return counters.values().stream()
+        .sorted(Comparator.comparing(Counter::name))
+        .toList();
+  }
+
+  /** Zeroes every metric, e.g. before reproducing a slow operation. */
+  public static void reset() {
+    timers.values().forEach(Timer::reset);
+    counters.values().forEach(Counter::reset);
+  }
+
+  private static <T> T register(String type, String name, T mbean) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName on = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+      if (!server.isRegistered(on)) server.registerMBean(mbean, on);
+    } catch (JMException | RuntimeException e) {
+      // Metrics still work in-process; only the JMX view is missing.
+      LOG.log(System.Logger.Level.WARNING, "Could not register MBean for " + name, e);
+    }
+    return mbean;
+  }
+}
@@ -0,0 +1,134 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count plus a latency histogram. Buckets are log-scaled in
+ * microseconds with eight sub-buckets per power of two, so percentiles are
+ * within about 12% of the true value at any scale while recording is a
+ * couple of atomic adds and no allocation.
+ *
+ * <pre>
+ * try (Timer.Context t = FIND.start()) { ... }
+ * </pre>
+ */
+public final class Timer implements TimerMXBean {
+
+  /** Values below this many microseconds get one bucket each. */
+  private static final int LINEAR = 8;
+  private static final int SUB_BITS = 3;
+  private static final int BUCKETS = LINEAR + 40 * LINEAR;   // up to ~12 days
+
+  private final String name;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+  /** Point-in-time view of a timer, in milliseconds. */
+  public record Snapshot(String name, long count, double mean, double p50, double p95, double p99, double max) {}
+
+  /** Stops the measurement it was started for on close(). */
+  public final class Context implements AutoCloseable {
+    private final long start = System.nanoTime();
+
+    private Context() {}
+
+    @Override public void close() {
+      record(System.nanoTime() - start);
+    }
+  }
+
+  Timer(String name) {
+    this.name = name;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public Context start() {
+    return new Context();
+  }
+
+  public void record(long nanos) {
+    count.increment();
+    totalNanos.add(nanos);
+    buckets.incrementAndGet(bucket(nanos / 1000));
+    long max;
+    while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+      // retry
+    }
+  }
+
+  private static int bucket(long micros) {
+    if (micros < LINEAR) return (int) Math.max(0, micros);
+    int exp = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (int) (micros >>> (exp - SUB_BITS)) & (LINEAR - 1);
+    return Math.min(BUCKETS - 1, LINEAR + (exp - SUB_BITS) * LINEAR + sub);
+  }
+
+  /** Upper bound, in microseconds, of the values that land in bucket {@code i}. */
+  private static long upper(int i) {
+    if (i < LINEAR) return i + 1;
+    int shift = (i - LINEAR) / LINEAR;
+    int sub = (i - LINEAR) % LINEAR;
+    return (long) (LINEAR + sub + 1) << shift;
+  }
+
+  /** Latency at percentile {@code p} (0-100) in milliseconds; 0 when nothing was recorded. */
+  public double percentile(double p) {
+    long[] counts = new long[BUCKETS];
+    long n = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      n += counts[i];
+    }
+    if (n == 0) return 0;
+    long rank = (long) Math.ceil(p / 100.0 * n);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) return Math.min(upper(i) / 1000.0, getMaxMillis());
+    }
+    return getMaxMillis();
+  }
+
+  public Snapshot snapshot() {
+    return new Snapshot(name, getCount(), getMeanMillis(), percentile(50), percentile(95), percentile(99), getMaxMillis());
+  }
+
+  @Override public long getCount() {
+    return count.sum();
+  }
+
+  @Override public double getMeanMillis() {
+    long n = count.sum();
+    return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+  }
+
+  @Override public double getP50Millis() {
+    return percentile(50);
+  }
+
+  @Override public double getP95Millis() {
+    return percentile(95);
+  }
+
+  @Override public double getP99Millis() {
+    return percentile(99);
+  }
+
+  @Override public double getMaxMillis() {
+    return maxNanos.get() / 1e6;
+  }
+
+  @Override public void reset() {
+    count.reset();
+    totalNanos.reset();
+    maxNanos.set(0);
+    for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+  }
+}
@@ -0,0 +1,12 @@
+package metrics;
+
+/** JMX view of a {@link Timer}; times are in milliseconds. */
+public interface TimerMXBean {
+  long getCount();
+  double getMeanMillis();
+  double getP50Millis();
+  double getP95Millis();
+  double getP99Millis();
+  double getMaxMillis();
+  void reset();
+}
@@ -0,0 +1,9 @@
+package model;
+
+import java.math.BigDecimal;
+
+/**
+ * Aggregated outflow for one period (e.g. "2025-09-28", ISO week "2025-W39",
+ * "2025-09", "2025"), optionally split by category ("" when not split).
+ */
+public record OutflowTotal(String period, String category, long qty, BigDecimal totalPrice, long entries) {}
@@ -0,0 +1,15 @@
+package model;
+
+import java.util.Objects;
+
+/** One line of a multi-line stock movement: positive delta receives, negative issues. */
+public record StockLine(String sku, int delta) {
+    public StockLine {
+        Objects.requireNonNull(sku, "sku must not be null");
+        sku = sku.trim();
+    }
+
+    public static StockLine receive(String sku, int qty) { return new StockLine(sku, qty); }
+
+    public static StockLine issue(String sku, int qty) { return new StockLine(sku, -qty); }
+}
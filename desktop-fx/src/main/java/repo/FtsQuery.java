@@ -0,0 +1,32 @@
+package repo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Turns free text from a search box into a safe FTS5 MATCH expression. */
+final class FtsQuery {
+
+  private FtsQuery() {}
+
+  /**
+   * Every word becomes a quoted prefix term and all terms must match, so
+   * "ton hp" finds "HP Toner 85A". Punctuation separates words the same way
+   * the unicode61 tokenizer does and never reaches FTS5 as query syntax.
+   * Returns null when the input has no searchable words.
+   */
+  static String prefixTerms(String input) {
+    if (input == null) return null;
+    List<String> terms = new ArrayList<>();
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i <= input.length(); i++) {
+      char ch = i < input.length() ? input.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(ch)) {
+        word.append(ch);
+      } else if (word.length() > 0) {
+        terms.add("\"" + word + "\"*");
+        word.setLength(0);
+      }
+    }
+    return terms.isEmpty() ? null : String.join(" ", terms);
+  }
+}
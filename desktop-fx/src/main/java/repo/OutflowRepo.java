@@ -1,37 +1,40 @@
 package repo;
 
 import db.Db;
+import db.OutflowArchive;
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Timer;
 import model.OutflowEntry;
+import model.OutflowTotal;
+import util.Money;
+import util.TimeUtil;
 
 import java.math.BigDecimal;
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class OutflowRepo {
+  private static final Timer ADD = Metrics.timer("repo.OutflowRepo.add");
+  private static final Timer ADD_ALL = Metrics.timer("repo.OutflowRepo.addAll");
+  private static final Timer LIST_SORTED = Metrics.timer("repo.OutflowRepo.listSorted");
+  private static final Timer FOR_EACH_SORTED = Metrics.timer("repo.OutflowRepo.forEachSorted");
+  private static final Timer SEARCH = Metrics.timer("repo.OutflowRepo.search");
+  private static final Timer TOTALS = Metrics.timer("repo.OutflowRepo.totals");
+  private static final Timer REBUILD_DAILY = Metrics.timer("repo.OutflowRepo.rebuildDaily");
+  private static final Timer PAGE = Metrics.timer("repo.OutflowRepo.page");
+  private static final Timer ARCHIVE_BEFORE = Metrics.timer("repo.OutflowRepo.archiveBefore");
+  private static final Counter ROWS_READ = Metrics.counter("db.rows.read");
 
-  private static BigDecimal toBigDec(String s) {
-    if (s == null) return BigDecimal.ZERO;
-    String t = s.trim();
-    if (t.isEmpty()) return BigDecimal.ZERO;
-    try {
-      return new BigDecimal(t);
-    } catch (NumberFormatException ex) {
-      return BigDecimal.ZERO;
-    }
-  }
 
   // --- Helpers --------------------------------------------------------------
 
-  private static LocalDateTime parseLdt(String s) {
-    if (s == null || s.isBlank()) return LocalDateTime.now();
-    String normalized = s.replace(' ', 'T'); // accept both ' ' and 'T'
-    return LocalDateTime.parse(normalized);   // ISO-8601
-  }
-
   /** Map UI sort keys -> SQL order-by clause (safe allowlist). */
   private static final Map<String, String> ORDER_BY = new HashMap<>();
   static {
@@ -56,10 +59,15 @@ public class OutflowRepo {
     ORDER_BY.put("QTY_DESC",  "CAST(o.qty AS INTEGER) DESC");
 
     // Price / Total Price (numeric, persisted on outflow)
-    ORDER_BY.put("PRICE_ASC",      "o.price ASC");
-    ORDER_BY.put("PRICE_DESC",     "o.price DESC");
-    ORDER_BY.put("TOTALPRICE_ASC", "o.total_price ASC");
-    ORDER_BY.put("TOTALPRICE_DESC","o.total_price DESC");
+    ORDER_BY.put("PRICE_ASC",      "o.price_cents ASC");
+    ORDER_BY.put("PRICE_DESC",     "o.price_cents DESC");
+    ORDER_BY.put("TOTALPRICE_ASC", "o.total_cents ASC");
+    ORDER_BY.put("TOTALPRICE_DESC","o.total_cents DESC");
+  }
+
+  /** Allowlisted sort keys, for tooling such as {@link QueryPlanVerifier}. */
+  static java.util.Set<String> sortKeys() {
+    return java.util.Set.copyOf(ORDER_BY.keySet());
   }
 
   private static String orderByFor(String sortKey) {
@@ -71,32 +79,56 @@ public class OutflowRepo {
   // --- Commands -------------------------------------------------------------
 
   public void add(OutflowEntry e) {
-    try (Connection c = Db.connect();
-         PreparedStatement ps = c.prepareStatement(
-             "insert into outflow(date_time,user,sku,product_name,unit,qty,category,price,total_price) values(?,?,?,?,?,?,?,?,?)")) {
+    try (Connection c = Db.writer()) {
+      add(c, e);
+    } catch (SQLException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private static final String INSERT =
+      "insert into outflow(date_time,user,sku,product_name,unit,qty,category,price_cents,total_cents) values(?,?,?,?,?,?,?,?,?)";
+
+  /** Insert on a caller-owned connection so it can share a transaction. */
+  public void add(Connection c, OutflowEntry e) throws SQLException {
+    try (Timer.Context t = ADD.start();
+         PreparedStatement ps = c.prepareStatement(INSERT)) {
+      bind(ps, e);
+      ps.executeUpdate();
+    }
+  }
 
-      // Persist ISO text for the timestamp for predictable round-tripping.
-      ps.setString(1, e.dateTime().toString());
-      ps.setString(2, e.user());
-      ps.setString(3, e.sku());
-      ps.setString(4, e.productName());
-      ps.setString(5, e.unit());
-      ps.setInt(6, e.qty());
+  /** Inserts all entries as one JDBC batch on a caller-owned connection. */
+  public void addAll(Connection c, List<OutflowEntry> entries) throws SQLException {
+    if (entries.isEmpty()) return;
+    try (Timer.Context t = ADD_ALL.start();
+         PreparedStatement ps = c.prepareStatement(INSERT)) {
+      for (OutflowEntry e : entries) {
+        bind(ps, e);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+  }
 
-      String cat = e.category() == null ? "" : e.category();
-      ps.setString(7, cat);
+  private static void bind(PreparedStatement ps, OutflowEntry e) throws SQLException {
+    // Epoch milliseconds: compact, indexable and compared as integers.
+    ps.setLong(1, TimeUtil.toEpochMillis(e.dateTime()));
+    ps.setString(2, e.user());
+    ps.setString(3, e.sku());
+    ps.setString(4, e.productName());
+    ps.setString(5, e.unit());
+    ps.setInt(6, e.qty());
 
-      BigDecimal price = e.price() == null ? BigDecimal.ZERO : e.price();
-      ps.setBigDecimal(8, price);
+    String cat = e.category() == null ? "" : e.category();
+    ps.setString(7, cat);
 
-      BigDecimal total = e.totalPrice();
-      if (total == null) total = price.multiply(BigDecimal.valueOf(e.qty()));
-      ps.setBigDecimal(9, total);
+    BigDecimal price = e.price() == null ? BigDecimal.ZERO : e.price();
+    ps.setLong(8, Money.toCents(price));
 
-      ps.executeUpdate();
-    } catch (SQLException ex) {
-      throw new RuntimeException(ex);
-    }
+    BigDecimal total = e.totalPrice();
+    if (total == null) total = price.multiply(BigDecimal.valueOf(e.qty()));
+    ps.setLong(9, Money.toCents(total));
   }
 
   // --- Queries --------------------------------------------------------------
@@ -106,52 +138,370 @@ public class OutflowRepo {
     return listSorted("DATE_DESC");
   }
 
+  private static final int STREAM_FETCH_SIZE = 500;
+
+  private static final String COLUMNS =
+      "  o.date_time, " +
+      "  o.user, " +
+      "  o.sku, " +
+      "  o.product_name, " +
+      "  o.unit, " +
+      "  o.qty, " +
+      "  o.category, " +
+      "  o.price_cents, " +
+      "  o.total_cents ";
+
   /** Listing with a UI sort key (see ORDER_BY allowlist above). */
   public List<OutflowEntry> listSorted(String sortKey) {
-    String orderBy = orderByFor(sortKey);
+    try (Timer.Context t = LIST_SORTED.start();
+         Connection c = Db.reader();
+         Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery(listSql(sortKey, archiveNewest(c) != null))) {
+      List<OutflowEntry> out = new ArrayList<>();
+      while (rs.next()) out.add(readRow(rs));
+      return out;
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Streams every row in the given sort order to {@code sink} straight off a
+   * forward-only cursor, so callers such as CSV export never hold the whole
+   * history in memory. Archived rows are merged in.
+   */
+  public void forEachSorted(String sortKey, Consumer<OutflowEntry> sink) {
+    try (Timer.Context t = FOR_EACH_SORTED.start();
+         Connection c = Db.reader();
+         Statement st = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      st.setFetchSize(STREAM_FETCH_SIZE);
+      try (ResultSet rs = st.executeQuery(listSql(sortKey, archiveNewest(c) != null))) {
+        while (rs.next()) sink.accept(readRow(rs));
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Ranked full-text search over user, SKU, product name and category, for
+   * questions like "who took toner last year". {@code from}/{@code to} are
+   * optional bounds on the entry time (inclusive/exclusive). The archive is
+   * only searched when {@code from} reaches back into it.
+   */
+  public List<OutflowEntry> search(String text, LocalDateTime from, LocalDateTime to, int limit) {
+    String match = FtsQuery.prefixTerms(text);
+    if (match == null) return List.of();
+    try (Timer.Context t = SEARCH.start();
+         Connection c = Db.reader()) {
+      Long archived = archiveNewest(c);
+      boolean withArchive = archived != null && (from == null || TimeUtil.toEpochMillis(from) <= archived);
+      String where =
+          "where f.outflow_fts match ? " +
+          (from == null ? "" : "and o.date_time >= ? ") +
+          (to == null ? "" : "and o.date_time < ? ");
+      String sql = withArchive
+          ? searchArm("main", where) + "union all " + searchArm(OutflowArchive.SCHEMA, where) + "order by rank limit ?"
+          : searchArm("main", where) + "order by f.rank limit ?";
+      try (PreparedStatement ps = c.prepareStatement(sql)) {
+        int i = 1;
+        for (int arm = withArchive ? 2 : 1; arm > 0; arm--) {
+          ps.setString(i++, match);
+          if (from != null) ps.setLong(i++, TimeUtil.toEpochMillis(from));
+          if (to != null) ps.setLong(i++, TimeUtil.toEpochMillis(to));
+        }
+        ps.setInt(i, limit);
+        try (ResultSet rs = ps.executeQuery()) {
+          List<OutflowEntry> out = new ArrayList<>();
+          while (rs.next()) out.add(readRow(rs));
+          return out;
+        }
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Ranks come from each file's own FTS statistics, so the merged order is
+  // close to, but not exactly, what one combined index would give.
+  private static String searchArm(String schema, String where) {
+    return "select " + COLUMNS + ", f.rank as rank " +
+        "from " + schema + ".outflow_fts f " +
+        "join " + schema + ".outflow o on o.id = f.rowid " +
+        where;
+  }
+
+  // --- Aggregates (outflow_daily rollup) --------------------------------------
+
+  /** Bucket size for {@link #totals}. */
+  public enum Period { DAY, WEEK, MONTH, YEAR }
+
+  private static String periodExpr(Period period) {
+    return switch (period) {
+      case DAY -> "day";
+      // ISO weeks (Monday start, week 1 holds the first Thursday), so a week
+      // spanning New Year is one bucket and there is no week 00.
+      case WEEK -> "strftime('%G-W%V', day)";
+      case MONTH -> "substr(day, 1, 7)";
+      case YEAR -> "substr(day, 1, 4)";
+    };
+  }
 
+  /**
+   * Issued qty and value per period from the daily rollup, so the cost
+   * depends on days x SKUs in range rather than on every issue recorded.
+   * {@code from} is inclusive, {@code to} exclusive; either may be null.
+   */
+  public List<OutflowTotal> totals(Period period, LocalDate from, LocalDate to, boolean byCategory) {
     String sql =
-        "select " +
-        "  o.date_time, " +
-        "  o.user, " +
-        "  o.sku, " +
-        "  o.product_name, " +
-        "  o.unit, " +
-        "  o.qty, " +
-        "  coalesce(o.category, '') as category, " +
-        "  coalesce(o.price, 0) as price, " +
-        "  coalesce(o.total_price, 0) as total_price " +
-        "from outflow o " +
-        "order by " + orderBy;
+        "select " + periodExpr(period) + " as period, " +
+        (byCategory ? "category" : "''") + " as category, " +
+        "sum(qty) as qty, sum(total_cents) as total_cents, sum(entries) as entries " +
+        "from outflow_daily " +
+        "where 1 = 1 " +
+        (from == null ? "" : "and day >= ? ") +
+        (to == null ? "" : "and day < ? ") +
+        "group by 1, 2 " +
+        "order by 1, 2";
+    try (Timer.Context t = TOTALS.start();
+         Connection c = Db.reader();
+         PreparedStatement ps = c.prepareStatement(sql)) {
+      int i = 1;
+      if (from != null) ps.setString(i++, from.toString());
+      if (to != null) ps.setString(i, to.toString());
+      try (ResultSet rs = ps.executeQuery()) {
+        List<OutflowTotal> out = new ArrayList<>();
+        while (rs.next()) {
+          out.add(new OutflowTotal(
+              rs.getString("period"),
+              rs.getString("category"),
+              rs.getLong("qty"),
+              Money.fromCents(rs.getLong("total_cents")),
+              rs.getLong("entries")));
+        }
+        return out;
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
 
-    try (Connection c = Db.connect();
-         Statement st = c.createStatement();
-         ResultSet rs = st.executeQuery(sql)) {
-      return readRows(rs);
+  /** Same as Migrations.OUTFLOW_DAILY_BACKFILL, over hot and archived rows. */
+  private static final String DAILY_BACKFILL_ALL = """
+      insert into outflow_daily(day, sku, category, user, qty, total_cents, entries)
+      select date(date_time / 1000, 'unixepoch', 'localtime'), sku, category, user, sum(qty), sum(total_cents), count(*)
+      from (
+        select date_time, sku, category, user, qty, total_cents from main.outflow
+        union all
+        select date_time, sku, category, user, qty, total_cents from archive.outflow
+      )
+      group by 1, 2, 3, 4""";
+
+  /** Recomputes the daily rollup from the outflow table and its archive in one transaction. */
+  public void rebuildDaily() {
+    Db.inTransaction(c -> {
+      try (Timer.Context t = REBUILD_DAILY.start();
+           Statement st = c.createStatement()) {
+        st.execute("delete from outflow_daily");
+        st.execute(DAILY_BACKFILL_ALL);
+      }
+      return null;
+    });
+  }
+
+  // --- Archive ----------------------------------------------------------------
+
+  private static final String ARCHIVE_COPY =
+      "insert or ignore into archive.outflow(id, date_time, user, sku, product_name, unit, qty, category, price_cents, total_cents) " +
+      "select id, date_time, user, sku, product_name, unit, qty, category, price_cents, total_cents " +
+      "from main.outflow where date_time < ? order by date_time, id limit ?";
+
+  private static final String ARCHIVE_DELETE =
+      "delete from main.outflow where id in (" +
+      "select o.id from main.outflow o " +
+      "where o.date_time < ? and exists (select 1 from archive.outflow a where a.id = o.id) " +
+      "order by o.date_time, o.id limit ?)";
+
+  /**
+   * Moves up to {@code batch} of the oldest entries before {@code cutoff} into
+   * the archive and returns how many left the hot table; call until it
+   * returns less than {@code batch}. The daily rollup is left as it is.
+   */
+  public int archiveBefore(LocalDateTime cutoff, int batch) {
+    long cut = TimeUtil.toEpochMillis(cutoff);
+    try (Timer.Context t = ARCHIVE_BEFORE.start()) {
+      // Copy and commit, then delete what the archive now holds. In WAL mode
+      // each attached file commits on its own (main first), so a single
+      // transaction could lose a batch in a crash; this order can only leave
+      // it in both files, which the next run's copy-or-ignore and delete
+      // finish. Until the delete commits a reader may see the batch twice.
+      Db.inTransaction(c -> {
+        try (PreparedStatement ps = c.prepareStatement(ARCHIVE_COPY)) {
+          ps.setLong(1, cut);
+          ps.setInt(2, batch);
+          return ps.executeUpdate();
+        }
+      });
+      return Db.inTransaction(c -> {
+        try (PreparedStatement ps = c.prepareStatement(ARCHIVE_DELETE)) {
+          ps.setLong(1, cut);
+          ps.setInt(2, batch);
+          return ps.executeUpdate();
+        }
+      });
+    }
+  }
+
+  /** Time of the newest archived entry as epoch millis, or null while the archive is empty. */
+  private static Long archiveNewest(Connection c) throws SQLException {
+    try (Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("select max(date_time) from archive.outflow")) {
+      long newest = rs.next() ? rs.getLong(1) : 0;
+      return rs.wasNull() ? null : newest;
+    }
+  }
+
+  /** Position after the last row of a page: its sort value plus id as tiebreaker. */
+  public record Cursor(Object key, long id) {}
+
+  /** One page of rows; {@code next} is null once the listing is exhausted. */
+  public record Page(List<OutflowEntry> rows, Cursor next) {}
+
+  /**
+   * Keyset (seek) pagination over the ORDER_BY allowlist. Rows are ordered by
+   * the sort expression and then id, and each page starts strictly after the
+   * previous cursor, so the cost of a page does not depend on how deep into
+   * the history it is.
+   *
+   * <p>Date-ordered pages that lie entirely after the newest archived entry
+   * come from the hot table alone; everything else merges in the archive.
+   */
+  public Page page(String sortKey, Cursor after, int limit) {
+    if (limit <= 0) throw new IllegalArgumentException("limit must be > 0");
+
+    try (Timer.Context t = PAGE.start();
+         Connection c = Db.reader()) {
+      Long archived = archiveNewest(c);
+      if (archived == null) return page(c, sortKey, after, limit, false);
+
+      String orderBy = orderByFor(sortKey);
+      if (orderBy.startsWith("o.date_time ")) {
+        Long afterKey = after == null ? null : ((Number) after.key()).longValue();
+        if (orderBy.endsWith("DESC")) {
+          // Newest first: a full hot page ending after the archive cannot
+          // have archived rows ahead of any of its rows.
+          if (afterKey == null || afterKey > archived) {
+            Page hot = page(c, sortKey, after, limit, false);
+            if (hot.next() != null && ((Number) hot.next().key()).longValue() > archived) return hot;
+          }
+        } else if (afterKey != null && afterKey > archived) {
+          // Oldest first: once past the archive only hot rows remain.
+          return page(c, sortKey, after, limit, false);
+        }
+      }
+      return page(c, sortKey, after, limit, true);
     } catch (SQLException e) {
       throw new RuntimeException(e);
     }
   }
 
-  private List<OutflowEntry> readRows(ResultSet rs) throws SQLException {
-    List<OutflowEntry> out = new ArrayList<>();
-    while (rs.next()) {
-      LocalDateTime dt = parseLdt(rs.getString("date_time"));
-      String user = rs.getString("user");
-      String sku = rs.getString("sku");
-      String name = rs.getString("product_name");
-      String unit = rs.getString("unit");
-      int qty = rs.getInt("qty");
-      String category = rs.getString("category");
-
-      BigDecimal price = toBigDec(rs.getString("price"));
-      BigDecimal total = toBigDec(rs.getString("total_price"));
-      if (total.compareTo(BigDecimal.ZERO) == 0) {
-        total = price.multiply(BigDecimal.valueOf(qty));
+  private Page page(Connection c, String sortKey, Cursor after, int limit, boolean withArchive) throws SQLException {
+    try (PreparedStatement ps = c.prepareStatement(pageSql(sortKey, after != null, withArchive))) {
+      int i = 1;
+      for (int arm = withArchive ? 2 : 1; arm > 0 && after != null; arm--) {
+        ps.setObject(i++, after.key());
+        ps.setLong(i++, after.id());
+      }
+      ps.setInt(i, limit);
+      try (ResultSet rs = ps.executeQuery()) {
+        List<OutflowEntry> rows = new ArrayList<>(limit);
+        Object lastKey = null;
+        long lastId = 0;
+        while (rs.next()) {
+          lastId = rs.getLong("id");
+          lastKey = rs.getObject("sort_key");
+          rows.add(readRow(rs));
+        }
+        Cursor next = rows.size() < limit ? null : new Cursor(lastKey, lastId);
+        return new Page(rows, next);
       }
+    }
+  }
+
+  static String listSql(String sortKey) {
+    return listSql(sortKey, false);
+  }
+
+  /**
+   * Full listing. With the archive, both tables are read in the same index
+   * order and SQLite merges them (MERGE (UNION ALL)) without a sort.
+   */
+  static String listSql(String sortKey, boolean withArchive) {
+    if (!withArchive) {
+      return "select " + COLUMNS +
+          "from outflow o " +
+          "order by " + orderByFor(sortKey);
+    }
+    String dir = direction(sortKey);
+    return pageArm(sortKey, "main", "") +
+        "union all " +
+        pageArm(sortKey, OutflowArchive.SCHEMA, "") +
+        "order by sort_key" + dir + ", id" + dir;
+  }
+
+  static String pageSql(String sortKey, boolean afterCursor) {
+    return pageSql(sortKey, afterCursor, false);
+  }
+
+  static String pageSql(String sortKey, boolean afterCursor, boolean withArchive) {
+    String orderBy = orderByFor(sortKey);
+    String expr = orderBy.substring(0, orderBy.lastIndexOf(' '));
+    String dir = direction(sortKey);
+    boolean desc = dir.trim().equals("DESC");
+    String where = afterCursor ? "where (" + expr + ", o.id) " + (desc ? "<" : ">") + " (?, ?) " : "";
 
-      out.add(new OutflowEntry(dt, user, sku, name, unit, qty, category, price, total));
+    if (withArchive) {
+      return pageArm(sortKey, "main", where) +
+          "union all " +
+          pageArm(sortKey, OutflowArchive.SCHEMA, where) +
+          "order by sort_key" + dir + ", id" + dir + " " +
+          "limit ?";
     }
-    return out;
+    return "select o.id, " + expr + " as sort_key, " + COLUMNS +
+        "from outflow o " +
+        where +
+        "order by " + expr + dir + ", o.id" + dir + " " +
+        "limit ?";
+  }
+
+  /** One side of a hot/archive union: id, the sort expression as sort_key, and the row. */
+  private static String pageArm(String sortKey, String schema, String where) {
+    String orderBy = orderByFor(sortKey);
+    String expr = orderBy.substring(0, orderBy.lastIndexOf(' '));
+    return "select o.id, " + expr + " as sort_key, " + COLUMNS +
+        "from " + schema + ".outflow o " +
+        where;
+  }
+
+  private static String direction(String sortKey) {
+    String orderBy = orderByFor(sortKey);
+    return orderBy.substring(orderBy.lastIndexOf(' '));
+  }
+
+  private OutflowEntry readRow(ResultSet rs) throws SQLException {
+    ROWS_READ.inc();
+    LocalDateTime dt = TimeUtil.fromEpochMillis(rs.getLong("date_time"));
+    String user = rs.getString("user");
+    String sku = rs.getString("sku");
+    String name = rs.getString("product_name");
+    String unit = rs.getString("unit");
+    int qty = rs.getInt("qty");
+    String category = rs.getString("category");
+
+    // Integer cents; zero totals were normalized by the cents migration.
+    BigDecimal price = Money.fromCents(rs.getLong("price_cents"));
+    BigDecimal total = Money.fromCents(rs.getLong("total_cents"));
+
+    return new OutflowEntry(dt, user, sku, name, unit, qty, category, price, total);
   }
 }
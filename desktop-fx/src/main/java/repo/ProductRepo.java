@@ -1,53 +1,126 @@
 package repo;
 
 import db.Db;
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Timer;
 import model.Category;
 import model.Product;
 import model.UnitType;
+import util.Money;
+import util.TimeUtil;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class ProductRepo {
-  public void upsert(Product p) {
-    String sql = """
-      insert into products(sku,name,price,qty,unit,category,added_on)
+  private static final Timer UPSERT = Metrics.timer("repo.ProductRepo.upsert");
+  private static final Timer UPDATE_DETAILS = Metrics.timer("repo.ProductRepo.updateDetails");
+  private static final Timer FIND = Metrics.timer("repo.ProductRepo.find");
+  private static final Timer TAKE_QTY = Metrics.timer("repo.ProductRepo.takeQty");
+  private static final Timer DELETE = Metrics.timer("repo.ProductRepo.delete");
+  private static final Timer LIST = Metrics.timer("repo.ProductRepo.list");
+  private static final Timer SEARCH = Metrics.timer("repo.ProductRepo.search");
+  private static final Timer FOR_EACH = Metrics.timer("repo.ProductRepo.forEach");
+  private static final Timer ADD_QTY = Metrics.timer("repo.ProductRepo.addQty");
+  private static final Timer UPDATE_QTY = Metrics.timer("repo.ProductRepo.updateQty");
+  private static final Timer UPSERT_ALL = Metrics.timer("repo.ProductRepo.upsertAll");
+  private static final Timer ADD_QTY_BATCH = Metrics.timer("repo.ProductRepo.addQtyBatch");
+  private static final Timer FIND_ALL = Metrics.timer("repo.ProductRepo.findAll");
+  private static final Counter ROWS_READ = Metrics.counter("db.rows.read");
+
+  private static final String UPSERT_SQL = """
+      insert into products(sku,name,price_cents,qty,unit,category,added_on)
       values(?,?,?,?,?,?,?)
       on conflict(sku) do update set
-        name=excluded.name, price=excluded.price, qty=excluded.qty,
+        name=excluded.name, price_cents=excluded.price_cents, qty=excluded.qty,
         unit=excluded.unit, category=excluded.category""";
-    try (Connection c = Db.connect();
-         PreparedStatement ps = c.prepareStatement(sql)) {
-      ps.setString(1, p.sku());
-      ps.setString(2, p.name());
-      ps.setBigDecimal(3, p.price());
-      ps.setInt(4, p.qty());
-      ps.setString(5, p.unit().name());
-      ps.setString(6, p.category().name());
-      ps.setString(7, p.addedOn().toString());
-      ps.executeUpdate();
+
+  /** Inserts or updates by SKU and returns the row as stored (added_on is kept on update). */
+  public Product upsert(Product p) {
+    try (Timer.Context t = UPSERT.start();
+         Connection c = Db.writer();
+         PreparedStatement ps = c.prepareStatement(UPSERT_SQL + " returning *")) {
+      bind(ps, p);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? map(rs) : p;
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Changes name, price, unit and category and returns the stored row, or
+   * null when the SKU is unknown. Stock is never touched here.
+   */
+  public Product updateDetails(String sku, String name, BigDecimal price, UnitType unit, Category category) {
+    try (Timer.Context t = UPDATE_DETAILS.start();
+         Connection c = Db.writer();
+         PreparedStatement ps = c.prepareStatement(
+             "update products set name=?, price_cents=?, unit=?, category=? where sku=? returning *")) {
+      ps.setString(1, name);
+      ps.setLong(2, Money.toCents(price));
+      ps.setString(3, unit.name());
+      ps.setString(4, category.name());
+      ps.setString(5, sku);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? map(rs) : null;
+      }
     } catch (SQLException e) {
       throw new RuntimeException(e);
     }
   }
 
   public Product find(String sku) {
-    try (Connection c = Db.connect();
-         PreparedStatement ps = c.prepareStatement("select * from products where sku=?")) {
-      ps.setString(1, sku);
-      ResultSet rs = ps.executeQuery();
-      if (!rs.next()) return null;
-      return map(rs);
+    try (Connection c = Db.reader()) {
+      return find(c, sku);
     } catch (SQLException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /** Lookup on a caller-owned connection (e.g. inside {@link Db#inTransaction}). */
+  public Product find(Connection c, String sku) throws SQLException {
+    try (Timer.Context t = FIND.start();
+         PreparedStatement ps = c.prepareStatement("select * from products where sku=?")) {
+      ps.setString(1, sku);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (!rs.next()) return null;
+        return map(rs);
+      }
+    }
+  }
+
+  /**
+   * Conditional decrement: takes {@code take} units only if that much stock is
+   * on hand, and returns the updated row from the same statement. Returns null
+   * when the SKU is unknown or stock is short (nothing is changed then).
+   */
+  public Product takeQty(Connection c, String sku, int take) throws SQLException {
+    try (Timer.Context t = TAKE_QTY.start();
+         PreparedStatement ps = c.prepareStatement(
+        "update products set qty = qty - ? where sku = ? and qty >= ? returning *")) {
+      ps.setInt(1, take);
+      ps.setString(2, sku);
+      ps.setInt(3, take);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (!rs.next()) return null;
+        return map(rs);
+      }
+    }
+  }
+
   public void delete(String sku) {
-    try (Connection c = Db.connect();
+    try (Timer.Context t = DELETE.start();
+         Connection c = Db.writer();
          PreparedStatement ps = c.prepareStatement("delete from products where sku=?")) {
       ps.setString(1, sku);
       ps.executeUpdate();
@@ -58,7 +131,8 @@ public class ProductRepo {
 
   public List<Product> list(String order) {
     String sql = "select * from products " + order;
-    try (Connection c = Db.connect();
+    try (Timer.Context t = LIST.start();
+         Connection c = Db.reader();
          Statement st = c.createStatement()) {
       ResultSet rs = st.executeQuery(sql);
       List<Product> out = new ArrayList<>();
@@ -69,8 +143,65 @@ public class ProductRepo {
     }
   }
 
+  /**
+   * Ranked full-text search over SKU, name and category (prefix match on
+   * every word, best matches first).
+   */
+  public List<Product> search(String text, int limit) {
+    String match = FtsQuery.prefixTerms(text);
+    if (match == null) return List.of();
+    String sql = """
+      select p.* from products_fts f
+      join products p on p.rowid = f.rowid
+      where products_fts match ?
+      order by f.rank
+      limit ?""";
+    try (Timer.Context t = SEARCH.start();
+         Connection c = Db.reader();
+         PreparedStatement ps = c.prepareStatement(sql)) {
+      ps.setString(1, match);
+      ps.setInt(2, limit);
+      try (ResultSet rs = ps.executeQuery()) {
+        List<Product> out = new ArrayList<>();
+        while (rs.next()) out.add(map(rs));
+        return out;
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Streams products in the given order to {@code sink} without building a list. */
+  public void forEach(String order, Consumer<Product> sink) {
+    String sql = "select * from products " + order;
+    try (Timer.Context t = FOR_EACH.start();
+         Connection c = Db.reader();
+         Statement st = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+         ResultSet rs = st.executeQuery(sql)) {
+      while (rs.next()) sink.accept(map(rs));
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Adds {@code delta} to the on-hand qty and returns the updated row, or null if the SKU is unknown. */
+  public Product addQty(String sku, int delta) {
+    try (Timer.Context t = ADD_QTY.start();
+         Connection c = Db.writer();
+         PreparedStatement ps = c.prepareStatement("update products set qty = qty + ? where sku = ? returning *")) {
+      ps.setInt(1, delta);
+      ps.setString(2, sku);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? map(rs) : null;
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public void updateQty(String sku, int qty) {
-    try (Connection c = Db.connect();
+    try (Timer.Context t = UPDATE_QTY.start();
+         Connection c = Db.writer();
          PreparedStatement ps = c.prepareStatement("update products set qty=? where sku=?")) {
       ps.setInt(1, qty);
       ps.setString(2, sku);
@@ -80,15 +211,76 @@ public class ProductRepo {
     }
   }
 
+  /** Largest IN (...) list bound per statement when loading a snapshot. */
+  private static final int IN_CHUNK = 500;
+
+  /** Loads the given SKUs in as few statements as possible, keyed by SKU. */
+  public Map<String, Product> findAll(Connection c, Collection<String> skus) throws SQLException {
+    Map<String, Product> out = new HashMap<>();
+    List<String> all = new ArrayList<>(skus);
+    try (Timer.Context t = FIND_ALL.start()) {
+      for (int from = 0; from < all.size(); from += IN_CHUNK) {
+        List<String> chunk = all.subList(from, Math.min(all.size(), from + IN_CHUNK));
+        String sql = "select * from products where sku in (" + "?,".repeat(chunk.size() - 1) + "?)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+          for (int i = 0; i < chunk.size(); i++) ps.setString(i + 1, chunk.get(i));
+          try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+              Product p = map(rs);
+              out.put(p.sku(), p);
+            }
+          }
+        }
+      }
+    }
+    return out;
+  }
+
+  /** Upserts many products as one JDBC batch on a caller-owned connection. */
+  public void upsertAll(Connection c, Collection<Product> products) throws SQLException {
+    try (Timer.Context t = UPSERT_ALL.start();
+         PreparedStatement ps = c.prepareStatement(UPSERT_SQL)) {
+      for (Product p : products) {
+        bind(ps, p);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+  }
+
+  /** Applies qty deltas as one JDBC batch on a caller-owned connection. */
+  public void addQtyBatch(Connection c, Map<String, Integer> deltas) throws SQLException {
+    try (Timer.Context t = ADD_QTY_BATCH.start();
+         PreparedStatement ps = c.prepareStatement("update products set qty = qty + ? where sku = ?")) {
+      for (Map.Entry<String, Integer> d : deltas.entrySet()) {
+        ps.setInt(1, d.getValue());
+        ps.setString(2, d.getKey());
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+  }
+
+  private static void bind(PreparedStatement ps, Product p) throws SQLException {
+    ps.setString(1, p.sku());
+    ps.setString(2, p.name());
+    ps.setLong(3, Money.toCents(p.price()));
+    ps.setInt(4, p.qty());
+    ps.setString(5, p.unit().name());
+    ps.setString(6, p.category().name());
+    ps.setLong(7, TimeUtil.toEpochMillis(p.addedOn()));
+  }
+
   private Product map(ResultSet rs) throws SQLException {
+    ROWS_READ.inc();
     return new Product(
         rs.getString("sku"),
         rs.getString("name"),
-        rs.getBigDecimal("price") != null ? rs.getBigDecimal("price") : new java.math.BigDecimal(rs.getDouble("price")),
+        Money.fromCents(rs.getLong("price_cents")),
         rs.getInt("qty"),
         UnitType.valueOf(rs.getString("unit")),
         Category.valueOf(rs.getString("category")),
-        java.time.LocalDateTime.parse(rs.getString("added_on"))
+        TimeUtil.fromEpochMillis(rs.getLong("added_on"))
     );
   }
 }
@@ -0,0 +1,44 @@
+package repo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Runs EXPLAIN QUERY PLAN over every allowlisted outflow query (full sorted
+ * listing, first page and follow-up pages, alone and merged with the
+ * archive) and reports the ones SQLite would answer with a temp B-tree sort
+ * instead of walking an index. QueryPlanVerifierTest runs it against a
+ * freshly migrated database, so a sort key without a matching index fails
+ * the build.
+ */
+public final class QueryPlanVerifier {
+
+  private QueryPlanVerifier() {}
+
+  /** Returns one message per offending query; empty means every plan is index-ordered. */
+  public static List<String> verify(Connection c) throws SQLException {
+    List<String> failures = new ArrayList<>();
+    for (String key : new TreeSet<>(OutflowRepo.sortKeys())) {
+      check(c, key + " list", OutflowRepo.listSql(key), failures);
+      check(c, key + " first page", OutflowRepo.pageSql(key, false), failures);
+      check(c, key + " next page", OutflowRepo.pageSql(key, true), failures);
+      check(c, key + " list with archive", OutflowRepo.listSql(key, true), failures);
+      check(c, key + " next page with archive", OutflowRepo.pageSql(key, true, true), failures);
+    }
+    return failures;
+  }
+
+  private static void check(Connection c, String label, String sql, List<String> failures) throws SQLException {
+    StringBuilder plan = new StringBuilder();
+    try (PreparedStatement ps = c.prepareStatement("explain query plan " + sql);
+         ResultSet rs = ps.executeQuery()) {
+      while (rs.next()) plan.append(rs.getString("detail")).append("; ");
+    }
+    if (plan.indexOf("USE TEMP B-TREE") >= 0) failures.add(label + ": " + plan);
+  }
+}
@@ -0,0 +1,59 @@
+package service;
+
+import db.OutflowArchive;
+import metrics.Metrics;
+import metrics.Timer;
+import repo.OutflowRepo;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps the outflow table to recent history by moving entries older than the
+ * horizon ({@code -Dembassyfx.archiveAfterDays}, default 365; 0 turns it off)
+ * into the archive file, then compacts the archive. Rows move in small
+ * batches, each its own short write transaction, so issuing stock is never
+ * held up for long while a first run works through years of history.
+ */
+public class ArchiveService {
+  private static final System.Logger LOG = System.getLogger(ArchiveService.class.getName());
+  private static final Timer RUN = Metrics.timer("service.ArchiveService.run");
+
+  static final int HORIZON_DAYS = Integer.getInteger("embassyfx.archiveAfterDays", 365);
+  private static final int BATCH = 5_000;
+
+  /** What one run did. */
+  public record Result(long moved, boolean compacted, long millis) {}
+
+  private final OutflowRepo repo = new OutflowRepo();
+
+  /** Archives everything before midnight {@link #HORIZON_DAYS} days ago. */
+  public Result run() {
+    if (HORIZON_DAYS <= 0) return new Result(0, false, 0);
+    return archiveBefore(LocalDate.now().minusDays(HORIZON_DAYS).atStartOfDay());
+  }
+
+  public Result archiveBefore(LocalDateTime cutoff) {
+    long start = System.nanoTime();
+    try (Timer.Context t = RUN.start()) {
+      long moved = 0;
+      int n;
+      do {
+        n = repo.archiveBefore(cutoff, BATCH);
+        moved += n;
+      } while (n == BATCH);
+      boolean compacted = moved > 0 && OutflowArchive.compact();
+      long ms = (System.nanoTime() - start) / 1_000_000;
+      if (moved > 0) {
+        LOG.log(System.Logger.Level.INFO, "Archived {0} outflow entries before {1} in {2} ms{3}",
+            moved, cutoff, ms, compacted ? " (archive compacted)" : "");
+      }
+      return new Result(moved, compacted, ms);
+    }
+  }
+
+  public CompletableFuture<Result> runAsync() {
+    return DbExecutor.supply(this::run);
+  }
+}
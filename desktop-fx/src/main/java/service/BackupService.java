@@ -0,0 +1,235 @@
+package service;
+
+import db.Backup;
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Timer;
+import util.PathUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Snapshots of the database and outflow archive in {@link PathUtil#backupFolder()},
+ * one folder per snapshot named after the time it was taken. A snapshot is
+ * written to a {@code .part} folder, checked with integrity_check and only
+ * then renamed into place, so every listed snapshot is restorable.
+ *
+ * <p>Old snapshots are removed beyond {@code -Dembassyfx.backup.keep}
+ * (default 7) or {@code -Dembassyfx.backup.maxAgeDays} (default 30); the
+ * newest is always kept. While the app runs, a snapshot is taken whenever
+ * the newest is older than {@code -Dembassyfx.backup.intervalHours}
+ * (default 24), checked hourly, so a PC that is off at night still gets its
+ * daily copy soon after it is switched on.
+ */
+public class BackupService {
+  private static final System.Logger LOG = System.getLogger(BackupService.class.getName());
+  private static final Timer BACKUP = Metrics.timer("service.BackupService.backup");
+  private static final Timer RESTORE = Metrics.timer("service.BackupService.restore");
+  private static final Counter BYTES = Metrics.counter("backup.bytes.written");
+
+  static final int KEEP = Integer.getInteger("embassyfx.backup.keep", 7);
+  static final int MAX_AGE_DAYS = Integer.getInteger("embassyfx.backup.maxAgeDays", 30);
+  static final int INTERVAL_HOURS = Integer.getInteger("embassyfx.backup.intervalHours", 24);
+
+  /** Pause after every 1 MB step; keeps a large copy from starving the app's own disk access. */
+  private static final long PAUSE_MILLIS = 2;
+
+  private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+  private static final String PART = ".part";
+
+  /** One backup or restore at a time, off the DB workers so a long copy never holds one. */
+  private static final ScheduledExecutorService RUNNER = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "db-backup");
+    t.setDaemon(true);
+    return t;
+  });
+
+  /** A verified snapshot folder. */
+  public record Snapshot(Path dir, LocalDateTime taken, long bytes) {}
+
+  /** One completed backup: what it wrote, how fast, and how many old snapshots it removed. */
+  public record Result(Snapshot snapshot, long millis, double mbPerSecond, int removed) {}
+
+  /** Copies, verifies and publishes a new snapshot, then rotates old ones out. */
+  public Result backup(Backup.Progress progress) {
+    return backup(progress, true);
+  }
+
+  private Result backup(Backup.Progress progress, boolean rotate) {
+    Path root = PathUtil.backupFolder();
+    LocalDateTime taken = LocalDateTime.now().withNano(0);
+    while (Files.exists(root.resolve(NAME.format(taken)))) taken = taken.plusSeconds(1);
+    String name = NAME.format(taken);
+    Path part = root.resolve(name + PART);
+    long start = System.nanoTime();
+    try (Timer.Context t = BACKUP.start()) {
+      long bytes = Backup.copyTo(part, PAUSE_MILLIS, progress);
+      for (String file : List.of(Backup.MAIN_FILE, Backup.ARCHIVE_FILE)) {
+        List<String> problems = Backup.verify(part.resolve(file));
+        if (!problems.isEmpty()) {
+          throw new IllegalStateException("Backup " + file + " failed integrity_check: " + String.join("; ", problems));
+        }
+      }
+      Path dir = root.resolve(name);
+      Files.move(part, dir);
+      BYTES.add(bytes);
+
+      long millis = (System.nanoTime() - start) / 1_000_000;
+      double mbPerSecond = bytes / 1_048_576.0 / Math.max(millis, 1) * 1000;
+      int removed = rotate ? rotate(null) : 0;
+      LOG.log(System.Logger.Level.INFO, String.format("Backed up %.1f MB to %s in %d ms (%.1f MB/s), removed %d old snapshot(s)",
+          bytes / 1_048_576.0, dir, millis, mbPerSecond, removed));
+      return new Result(new Snapshot(dir, taken, bytes), millis, mbPerSecond, removed);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      deleteTree(part);
+    }
+  }
+
+  /** Backs up when the newest snapshot is older than the interval; null when none was due. */
+  public Result backupIfDue() {
+    List<Snapshot> existing = snapshots();
+    if (!existing.isEmpty()
+        && Duration.between(existing.get(0).taken(), LocalDateTime.now()).toHours() < INTERVAL_HOURS) {
+      return null;
+    }
+    return backup(Backup.Progress.NONE);
+  }
+
+  /** Verified snapshots, newest first. */
+  public List<Snapshot> snapshots() {
+    Path root = PathUtil.backupFolder();
+    if (!Files.isDirectory(root)) return List.of();
+    List<Snapshot> out = new ArrayList<>();
+    try (Stream<Path> dirs = Files.list(root)) {
+      for (Path dir : (Iterable<Path>) dirs::iterator) {
+        LocalDateTime taken = takenAt(dir);
+        if (taken == null || !Files.isRegularFile(dir.resolve(Backup.MAIN_FILE))) continue;
+        out.add(new Snapshot(dir, taken, size(dir)));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    out.sort(Comparator.comparing(Snapshot::taken).reversed());
+    return out;
+  }
+
+  /**
+   * Restores {@code snapshot} into the running database after checking it
+   * again, and after taking a snapshot of the current state so the restore
+   * itself can be undone. Rotation waits until the restore is done and
+   * never removes {@code snapshot}. Callers reload anything they have cached.
+   */
+  public void restore(Snapshot snapshot, Backup.Progress progress) {
+    try (Timer.Context t = RESTORE.start()) {
+      // Copies from before archiving have no archive.db; restoreFrom handles that.
+      for (String file : List.of(Backup.MAIN_FILE, Backup.ARCHIVE_FILE)) {
+        Path f = snapshot.dir().resolve(file);
+        if (file.equals(Backup.ARCHIVE_FILE) && !Files.exists(f)) continue;
+        List<String> problems = Backup.verify(f);
+        if (!problems.isEmpty()) {
+          throw new IllegalStateException("Snapshot " + snapshot.dir().getFileName() + " " + file
+              + " failed integrity_check: " + String.join("; ", problems));
+        }
+      }
+      backup(Backup.Progress.NONE, false);
+      Backup.restoreFrom(snapshot.dir(), progress);
+      LOG.log(System.Logger.Level.INFO, "Restored database from {0}", snapshot.dir());
+      rotate(snapshot.dir());
+    }
+  }
+
+  public CompletableFuture<Result> backupAsync(Backup.Progress progress) {
+    return CompletableFuture.supplyAsync(() -> backup(progress), RUNNER);
+  }
+
+  public CompletableFuture<Void> restoreAsync(Snapshot snapshot, Backup.Progress progress) {
+    return CompletableFuture.runAsync(() -> restore(snapshot, progress), RUNNER);
+  }
+
+  /** Checks hourly, starting shortly after the call, whether a backup is due. */
+  public void startSchedule() {
+    RUNNER.scheduleWithFixedDelay(() -> {
+      try {
+        backupIfDue();
+      } catch (RuntimeException e) {
+        LOG.log(System.Logger.Level.WARNING, "Scheduled backup failed", e);
+      }
+    }, 5, 60, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Removes snapshots past the count or age limit and leftover .part
+   * folders. The newest is never removed, nor {@code keep} when not null.
+   */
+  int rotate(Path keep) {
+    int removed = 0;
+    List<Snapshot> all = snapshots();
+    LocalDateTime oldest = LocalDateTime.now().minusDays(MAX_AGE_DAYS);
+    for (int i = 1; i < all.size(); i++) {
+      Snapshot s = all.get(i);
+      if (s.dir().equals(keep)) continue;
+      if (i >= KEEP || s.taken().isBefore(oldest)) {
+        deleteTree(s.dir());
+        removed++;
+      }
+    }
+    try (Stream<Path> dirs = Files.list(PathUtil.backupFolder())) {
+      dirs.filter(d -> d.getFileName().toString().endsWith(PART)).forEach(BackupService::deleteTree);
+    } catch (IOException e) {
+      LOG.log(System.Logger.Level.WARNING, "Could not clean up partial backups", e);
+    }
+    return removed;
+  }
+
+  private static LocalDateTime takenAt(Path dir) {
+    String name = dir.getFileName().toString();
+    if (name.length() != 15 || !Files.isDirectory(dir)) return null;
+    try {
+      return LocalDateTime.parse(name, NAME);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  private static long size(Path dir) {
+    long bytes = 0;
+    for (String file : List.of(Backup.MAIN_FILE, Backup.ARCHIVE_FILE)) {
+      try {
+        if (Files.isRegularFile(dir.resolve(file))) bytes += Files.size(dir.resolve(file));
+      } catch (IOException ignore) {}
+    }
+    return bytes;
+  }
+
+  private static void deleteTree(Path dir) {
+    if (!Files.exists(dir)) return;
+    try (Stream<Path> walk = Files.walk(dir)) {
+      walk.sorted(Comparator.reverseOrder()).forEach(p -> {
+        try {
+          Files.delete(p);
+        } catch (IOException e) {
+          LOG.log(System.Logger.Level.WARNING, "Could not delete " + p, e);
+        }
+      });
+    } catch (IOException e) {
+      LOG.log(System.Logger.Level.WARNING, "Could not delete " + dir, e);
+    }
+  }
+}
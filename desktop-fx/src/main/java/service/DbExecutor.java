@@ -0,0 +1,45 @@
+package service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated worker threads for database work, so nothing touching SQLite
+ * runs on the JavaFX application thread. The pool is sized to the
+ * connection pool (one writer plus a few readers); more threads would only
+ * queue on connections.
+ */
+public final class DbExecutor {
+
+  private static final int THREADS = 4;
+
+  private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+    private final AtomicInteger n = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "db-worker-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  private DbExecutor() {}
+
+  public static <T> CompletableFuture<T> supply(Supplier<T> work) {
+    return CompletableFuture.supplyAsync(work, POOL);
+  }
+
+  public static CompletableFuture<Void> run(Runnable work) {
+    return CompletableFuture.runAsync(work, POOL);
+  }
+
+  /** Stops accepting work; queued tasks still finish. */
+  public static void shutdown() {
+    POOL.shutdown();
+  }
+}
@@ -1,126 +1,265 @@
 package service;
 
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Timer;
 import model.OutflowEntry;
 import model.Product;
-import util.CsvEscaper;
-import util.NumberUtil;
+import repo.OutflowRepo;
+import repo.ProductRepo;
+import util.CsvEncoder;
+import util.Money;
 import util.PathUtil;
 import util.TimeUtil;
+import util.XlsxWriter;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.ArrayList;
 import java.util.List;
-import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CancellationException;
 import java.time.LocalDateTime;
 
+/**
+ * CSV and Excel exports. Rows are streamed from a forward-only database
+ * cursor straight into the file, so memory stays flat however many rows are
+ * exported. Each row source writes typed cells; the CSV writer formats them
+ * as text, the XLSX writer stores numbers and dates as such.
+ */
 public class ExportService {
-  private static final DateTimeFormatter DT_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+  private static final Timer EXPORT_INVENTORY = Metrics.timer("service.ExportService.exportInventory");
+  private static final Timer EXPORT_OUTFLOW = Metrics.timer("service.ExportService.exportOutflow");
+  private static final Counter ROWS_WRITTEN = Metrics.counter("export.rows.written");
 
-  // Format helpers that work whether the model exposes LocalDateTime or String
-  private static String fmt(LocalDateTime dt) {
-    return dt == null ? "" : DT_FMT.format(dt);
+  private final ProductRepo products = new ProductRepo();
+  private final OutflowRepo outflow = new OutflowRepo();
+
+  /** Rows between progress callbacks. */
+  private static final int PROGRESS_EVERY = 1000;
+
+  /** Export file formats. */
+  public enum Format {
+    CSV(".csv"), XLSX(".xlsx");
+
+    private final String extension;
+
+    Format(String extension) {
+      this.extension = extension;
+    }
   }
-  private static String fmt(String s) {
-    return s == null ? "" : s; // already a string; assume correctly formatted
+
+  private static final List<XlsxWriter.Column> INVENTORY_COLUMNS = List.of(
+      new XlsxWriter.Column("SKU", 16), new XlsxWriter.Column("Name", 40), new XlsxWriter.Column("Qty", 8),
+      new XlsxWriter.Column("Price", 12), new XlsxWriter.Column("Total Price", 14), new XlsxWriter.Column("Unit", 10),
+      new XlsxWriter.Column("Category", 14), new XlsxWriter.Column("AddedOn", 17));
+
+  private static final List<XlsxWriter.Column> OUTFLOW_COLUMNS = List.of(
+      new XlsxWriter.Column("DateTime", 17), new XlsxWriter.Column("User", 14), new XlsxWriter.Column("SKU", 16),
+      new XlsxWriter.Column("Product", 40), new XlsxWriter.Column("Category", 14), new XlsxWriter.Column("Unit", 10),
+      new XlsxWriter.Column("Qty", 8), new XlsxWriter.Column("Price", 12), new XlsxWriter.Column("Total Price", 14));
+
+  /**
+   * Export progress sink. {@link #rows} is called every thousand rows and
+   * once at the end; {@link #cancelled} is polled between rows and a true
+   * result stops the export and removes the partial .tmp file.
+   */
+  public interface Progress {
+    void rows(long written);
+    boolean cancelled();
+
+    Progress NONE = new Progress() {
+      @Override public void rows(long written) {}
+      @Override public boolean cancelled() { return false; }
+    };
   }
 
-  public Path exportInventory(java.util.List<Product> products, String suffix) {
-    try {
+  /** Produces the data rows of an export; called once with the open row writer. */
+  @FunctionalInterface
+  private interface ExportBody {
+    void write(RowWriter w) throws IOException;
+  }
+
+  /**
+   * Takes one row's typed cells in column order, then {@link #endRow()}.
+   * Counts rows for progress and honours cancellation. IO failures surface
+   * unchecked because rows are written from inside cursor callbacks.
+   */
+  private abstract static class RowWriter {
+    private final Progress progress;
+    private long rows;
+
+    RowWriter(Progress progress) {
+      this.progress = progress;
+    }
+
+    abstract void text(String s);
+    abstract void integer(long v);
+    abstract void money(long cents);
+    abstract void dateTime(LocalDateTime dt);
+
+    /** Writes out the cells given since the last row. */
+    abstract void finishRow();
+
+    final void endRow() {
+      if (progress.cancelled()) throw new CancellationException("Export cancelled");
+      finishRow();
+      ROWS_WRITTEN.inc();
+      if (++rows % PROGRESS_EVERY == 0) progress.rows(rows);
+    }
+  }
+
+  /** Encodes cells straight into the CSV text, the way our CSVs have always shown them. */
+  private static final class CsvRowWriter extends RowWriter {
+    private final CsvEncoder out;
+
+    CsvRowWriter(CsvEncoder out, Progress progress) {
+      super(progress);
+      this.out = out;
+    }
+
+    @Override void text(String s) { out.text(s); }
+    @Override void integer(long v) { out.integer(v); }
+    @Override void money(long cents) { out.money(cents); }
+    @Override void dateTime(LocalDateTime dt) { out.dateTime(dt); }
+
+    @Override void finishRow() {
+      try { out.endRow(); } catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+  }
+
+  private static final class XlsxRowWriter extends RowWriter {
+    private final XlsxWriter out;
+
+    XlsxRowWriter(XlsxWriter out, Progress progress) {
+      super(progress);
+      this.out = out;
+    }
+
+    @Override void text(String s) {
+      try { out.text(s); } catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+    @Override void integer(long v) {
+      try { out.integer(v); } catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+    @Override void money(long cents) {
+      try { out.money(Money.fromCents(cents)); } catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+    @Override void dateTime(LocalDateTime dt) {
+      try { out.dateTime(dt); } catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+    @Override void finishRow() {
+      try { out.endRow(); } catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+  }
+
+  /** Exports the inventory in the given sort order (inventory sort keys, e.g. "SKU" or "PRICE_ASC"). */
+  public Path exportInventory(String sortKey) {
+    return exportInventory(sortKey, Format.CSV, Progress.NONE);
+  }
+
+  public Path exportInventory(String sortKey, Progress progress) {
+    return exportInventory(sortKey, Format.CSV, progress);
+  }
+
+  public Path exportInventory(String sortKey, Format format, Progress progress) {
+    try (Timer.Context t = EXPORT_INVENTORY.start()) {
       Path folder = PathUtil.ensureExportFolder();
-      String name = "inventory_" + suffix + "_" + TimeUtil.timestamp() + ".csv";
+      String name = "inventory_" + sortKey + "_" + TimeUtil.timestamp() + format.extension;
       Path target = folder.resolve(name);
-      List<List<String>> rows = new ArrayList<>();
-      rows.add(List.of("SKU","Name","Qty","Price","Total Price","Unit","Category","AddedOn"));
-      for (Product p : products) {
-        rows.add(List.of(
-            p.sku(),
-            p.name(),
-            String.valueOf(p.qty()),
-            NumberUtil.price(p.price()),
-            NumberUtil.price((p.price() == null ? BigDecimal.ZERO : p.price()).multiply(BigDecimal.valueOf(p.qty()))),
-            p.unit().name(),
-            p.category().name(),
-            fmt(p.addedOn())
-        ));
-      }
-      writeCsv(target, rows);
+      writeExport(target, format, "Inventory", INVENTORY_COLUMNS, progress,
+          w -> products.forEach(InventoryService.orderClause(sortKey), p -> inventoryRow(p, w)));
       return target;
     } catch (IOException e) { throw new RuntimeException(e); }
   }
 
-  public Path exportOutflow(java.util.List<OutflowEntry> entries, String suffix) {
-    try {
-      Path folder = PathUtil.ensureExportFolder();
-      String name = "outflow_" + (suffix == null || suffix.isBlank() ? "" : suffix + "_") + TimeUtil.timestamp() + ".csv";
-      Path target = folder.resolve(name);
-      List<List<String>> rows = new ArrayList<>();
-      rows.add(List.of("DateTime","User","SKU","Product","Category","Unit","Qty","Price","Total Price"));
-      for (OutflowEntry e : entries) {
-        // Resolve price (prefer explicit price; if absent, try derive from totalPrice/qty)
-        BigDecimal price = e.price();
-        if (price == null) {
-          BigDecimal derived = null;
-          try {
-            java.lang.reflect.Method m = e.getClass().getMethod("totalPrice");
-            Object v = m.invoke(e);
-            if (v instanceof BigDecimal && e.qty() > 0) {
-              derived = ((BigDecimal) v).divide(BigDecimal.valueOf(e.qty()), 2, java.math.RoundingMode.HALF_UP);
-            }
-          } catch (Exception ignore) { /* accessor not present or not usable */ }
-          price = derived == null ? BigDecimal.ZERO : derived;
-        }
+  /** Exports outflow history in an OutflowRepo sort order; {@code suffix} tags the file name. */
+  public Path exportOutflow(String sortKey, String suffix) {
+    return exportOutflow(sortKey, suffix, Format.CSV, Progress.NONE);
+  }
 
-        // Resolve totalPrice (prefer explicit accessor; otherwise compute qty * price)
-        BigDecimal total = null;
-        try {
-          java.lang.reflect.Method m2 = e.getClass().getMethod("totalPrice");
-          Object v2 = m2.invoke(e);
-          if (v2 instanceof BigDecimal) {
-            total = (BigDecimal) v2;
-          }
-        } catch (Exception ignore) { /* accessor not present or not usable */ }
-        if (total == null) {
-          total = (price == null ? BigDecimal.ZERO : price).multiply(BigDecimal.valueOf(e.qty()));
-        }
+  public Path exportOutflow(String sortKey, String suffix, Progress progress) {
+    return exportOutflow(sortKey, suffix, Format.CSV, progress);
+  }
 
-        // Category fallback
-        String cat = e.category();
-        if (cat == null) cat = "";
-
-        rows.add(List.of(
-            fmt(e.dateTime()),
-            e.user(),
-            e.sku(),
-            e.productName(),
-            cat,
-            e.unit(),
-            String.valueOf(e.qty()),
-            NumberUtil.price(price),
-            NumberUtil.price(total)
-        ));
-      }
-      writeCsv(target, rows);
+  public Path exportOutflow(String sortKey, String suffix, Format format, Progress progress) {
+    try (Timer.Context t = EXPORT_OUTFLOW.start()) {
+      Path folder = PathUtil.ensureExportFolder();
+      String name = "outflow_" + (suffix == null || suffix.isBlank() ? "" : suffix + "_") + TimeUtil.timestamp() + format.extension;
+      Path target = folder.resolve(name);
+      writeExport(target, format, "Outflow", OUTFLOW_COLUMNS, progress,
+          w -> outflow.forEachSorted(sortKey, e -> outflowRow(e, w)));
       return target;
     } catch (IOException e) { throw new RuntimeException(e); }
   }
 
-  private void writeCsv(Path target, java.util.List<java.util.List<String>> rows) throws IOException {
+  private static void inventoryRow(Product p, RowWriter w) {
+    long cents = Money.toCents(p.price());
+    w.text(p.sku());
+    w.text(p.name());
+    w.integer(p.qty());
+    w.money(cents);
+    w.money(cents * p.qty());
+    w.text(p.unit().name());
+    w.text(p.category().name());
+    w.dateTime(p.addedOn());
+    w.endRow();
+  }
+
+  /** The record fills in price, total and category, so every field is read as is. */
+  private static void outflowRow(OutflowEntry e, RowWriter w) {
+    w.dateTime(e.dateTime());
+    w.text(e.user());
+    w.text(e.sku());
+    w.text(e.productName());
+    w.text(e.category());
+    w.text(e.unit());
+    w.integer(e.qty());
+    w.money(Money.toCents(e.price()));
+    w.money(Money.toCents(e.totalPrice()));
+    w.endRow();
+  }
+
+  /**
+   * Writes header and body to a sibling .tmp file and moves it into place
+   * atomically, so a partial export never appears under the final name.
+   * The .tmp file is removed when the export fails or is cancelled.
+   */
+  private void writeExport(Path target, Format format, String sheet, List<XlsxWriter.Column> columns,
+                           Progress progress, ExportBody body) throws IOException {
     Path tmp = Paths.get(target.toString() + ".tmp");
-    try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
-      for (java.util.List<String> r : rows) {
-        boolean first = true;
-        for (String v : r) {
-          if (!first) w.write(",");
-          w.write(CsvEscaper.escape(v));
-          first = false;
+    boolean done = false;
+    try {
+      RowWriter rows;
+      try {
+        if (format == Format.XLSX) {
+          try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024);
+               XlsxWriter x = new XlsxWriter(os, sheet, columns)) {
+            rows = new XlsxRowWriter(x, progress);
+            body.write(rows);
+          }
+        } else {
+          try (Writer w = new OutputStreamWriter(Files.newOutputStream(tmp), StandardCharsets.UTF_8)) {
+            CsvEncoder csv = new CsvEncoder(w);
+            for (XlsxWriter.Column c : columns) csv.text(c.title());
+            csv.endRow();
+            rows = new CsvRowWriter(csv, progress);
+            body.write(rows);
+            csv.flush();
+          }
         }
-        w.write(System.lineSeparator());
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
       }
+      progress.rows(rows.rows);
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      done = true;
+    } finally {
+      if (!done) Files.deleteIfExists(tmp);
     }
-    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
   }
 }
@@ -1,51 +1,246 @@
 package service;
 
+import db.Db;
+import metrics.Metrics;
+import metrics.Timer;
 import model.Category;
+import model.OutflowEntry;
 import model.Product;
+import model.StockLine;
 import model.UnitType;
+import repo.OutflowRepo;
 import repo.ProductRepo;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 public class InventoryService {
+  private static final Timer CREATE = Metrics.timer("service.InventoryService.create");
+  private static final Timer UPDATE = Metrics.timer("service.InventoryService.update");
+  private static final Timer DELETE = Metrics.timer("service.InventoryService.delete");
+  private static final Timer FIND = Metrics.timer("service.InventoryService.find");
+  private static final Timer SEARCH = Metrics.timer("service.InventoryService.search");
+  private static final Timer LIST = Metrics.timer("service.InventoryService.list");
+  private static final Timer RECEIVE = Metrics.timer("service.InventoryService.receive");
+  private static final Timer ISSUE = Metrics.timer("service.InventoryService.issue");
+  private static final Timer APPLY_MOVEMENTS = Metrics.timer("service.InventoryService.applyMovements");
+
   private final ProductRepo repo = new ProductRepo();
+  private final OutflowRepo outflow = new OutflowRepo();
+
+  // --- Product cache --------------------------------------------------------
+  // SKU-keyed copy of the catalog, loaded on first use and kept coherent by
+  // writing through on every change made via this service. Writes that bypass
+  // the service (another process, direct repo use) are picked up by list(),
+  // which reloads it, or by calling invalidate(). Every write-through stamps
+  // its SKU with a sequence number; a reload leaves alone any SKU written
+  // after its snapshot was taken, since the snapshot may predate that write.
+
+  /** Cache counters since this service was created. */
+  public record CacheStats(long hits, long misses, long evictions, int size) {}
+
+  private final ConcurrentHashMap<String, Product> cache = new ConcurrentHashMap<>();
+  private volatile boolean cacheLoaded;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final AtomicLong writeSeq = new AtomicLong();
+  private final ConcurrentHashMap<String, Long> writtenAt = new ConcurrentHashMap<>();
+  // Stamps up to this write number have been dropped from writtenAt.
+  private volatile long prunedThrough;
 
-  public void create(String sku, String name, BigDecimal price, int qty, UnitType unit, Category cat) {
-    if (sku == null || sku.isBlank()) throw new IllegalArgumentException("SKU is required");
-    if (name == null || name.isBlank()) throw new IllegalArgumentException("Name is required");
-    if (price == null || price.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
-    if (qty < 0) throw new IllegalArgumentException("Qty must be >= 0");
-    if (unit == null) throw new IllegalArgumentException("Unit is required");
-    if (cat == null) throw new IllegalArgumentException("Category is required");
-    price = price.setScale(2, RoundingMode.HALF_UP);
-    Product p = new Product(sku.trim(), name.trim(), price, qty, unit, cat, LocalDateTime.now());
-    repo.upsert(p);
+  private void ensureCacheLoaded() {
+    if (cacheLoaded) return;
+    synchronized (cache) {
+      if (!cacheLoaded) {
+        long since = writeSeq.get();
+        reloadCache(repo.list("order by sku asc"), since);
+        cacheLoaded = true;
+      }
+    }
   }
 
-  public void update(String sku, String name, BigDecimal price, UnitType unit, Category cat) {
-    Product cur = repo.find(sku);
-    if (cur == null) throw new IllegalArgumentException("SKU not found");
-    if (unit == null) throw new IllegalArgumentException("Unit is required");
-    if (cat == null) throw new IllegalArgumentException("Category is required");
-    if (price == null || price.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
-    price = price.setScale(2, RoundingMode.HALF_UP);
-    Product upd = new Product(cur.sku(), name, price, cur.qty(), unit, cat, cur.addedOn());
-    repo.upsert(upd);
+  /**
+   * Replaces the cache contents with a full listing read after write number
+   * {@code since}; SKUs written through later keep their cached state.
+   */
+  private void reloadCache(List<Product> all, long since) {
+    Map<String, Product> fresh = new HashMap<>(all.size() * 2);
+    for (Product p : all) fresh.put(p.sku(), p);
+    // The check runs inside compute, so a write-through to the same SKU lands
+    // either before it (and is kept) or after it (and overwrites the snapshot).
+    for (String sku : cache.keySet()) {
+      if (fresh.containsKey(sku)) continue;
+      cache.computeIfPresent(sku, (k, v) -> {
+        if (!settled(k, since)) return v;
+        evictions.increment();
+        return null;
+      });
+    }
+    for (Product p : all) cache.compute(p.sku(), (k, v) -> settled(k, since) ? p : v);
+    // Stamps up to the snapshot are settled now; later ones must stay.
+    if (since > prunedThrough) prunedThrough = since;
+    writtenAt.values().removeIf(seq -> seq <= since);
   }
 
-  public void delete(String sku) { repo.delete(sku); }
+  /**
+   * True when {@code sku} has not been written through since write number
+   * {@code since}. A read older than the last prune can no longer tell, so
+   * it counts as unsettled.
+   */
+  private boolean settled(String sku, long since) {
+    return since >= prunedThrough && writtenAt.getOrDefault(sku, 0L) <= since;
+  }
+
+  private void cachePut(Product p) {
+    if (p == null) return;
+    writtenAt.put(p.sku(), writeSeq.incrementAndGet());
+    cache.put(p.sku(), p);
+  }
+
+  private void cacheRemove(String sku) {
+    writtenAt.put(sku, writeSeq.incrementAndGet());
+    if (cache.remove(sku) != null) evictions.increment();
+  }
+
+  /**
+   * Runs a write and its cache update under one hold of the writer, so cache
+   * updates from different threads land in the order their rows committed.
+   */
+  private <T> T writeThrough(Supplier<T> write) {
+    try (Connection c = Db.writer()) {
+      return write.get();
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Drops everything; the next lookup reloads the catalog. */
+  public void invalidate() {
+    synchronized (cache) {
+      evictions.add(cache.size());
+      cache.clear();
+      cacheLoaded = false;
+    }
+  }
 
+  public CacheStats cacheStats() {
+    return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), cache.size());
+  }
+
+  /** Returns the product as stored. */
+  public Product create(String sku, String name, BigDecimal price, int qty, UnitType unit, Category cat) {
+    try (Timer.Context t = CREATE.start()) {
+      if (sku == null || sku.isBlank()) throw new IllegalArgumentException("SKU is required");
+      if (name == null || name.isBlank()) throw new IllegalArgumentException("Name is required");
+      if (price == null || price.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
+      if (qty < 0) throw new IllegalArgumentException("Qty must be >= 0");
+      if (unit == null) throw new IllegalArgumentException("Unit is required");
+      if (cat == null) throw new IllegalArgumentException("Category is required");
+      price = price.setScale(2, RoundingMode.HALF_UP);
+      Product p = new Product(sku.trim(), name.trim(), price, qty, unit, cat, LocalDateTime.now());
+      return writeThrough(() -> {
+        Product stored = repo.upsert(p);
+        cachePut(stored);
+        return stored;
+      });
+    }
+  }
+
+  /** Returns the product as updated, with the qty the database holds. */
+  public Product update(String sku, String name, BigDecimal price, UnitType unit, Category cat) {
+    try (Timer.Context t = UPDATE.start()) {
+      if (unit == null) throw new IllegalArgumentException("Unit is required");
+      if (cat == null) throw new IllegalArgumentException("Category is required");
+      if (price == null || price.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
+      price = price.setScale(2, RoundingMode.HALF_UP);
+      BigDecimal scaled = price;
+      // qty is left to the database: the cached copy may lag a stock movement.
+      return writeThrough(() -> {
+        Product upd = repo.updateDetails(sku, name, scaled, unit, cat);
+        if (upd == null) {
+          cacheRemove(sku);
+          throw new IllegalArgumentException("SKU not found");
+        }
+        cachePut(upd);
+        return upd;
+      });
+    }
+  }
+
+  public void delete(String sku) {
+    try (Timer.Context t = DELETE.start()) {
+      writeThrough(() -> {
+        repo.delete(sku);
+        cacheRemove(sku);
+        return null;
+      });
+    }
+  }
+
+  /** O(1) lookup from the cache; only a miss goes to the database. */
   public Product find(String sku) {
-    return repo.find(sku);
+    try (Timer.Context t = FIND.start()) {
+      if (sku == null) return null;
+      ensureCacheLoaded();
+      Product p = cache.get(sku);
+      if (p != null) {
+        hits.increment();
+        return p;
+      }
+      misses.increment();
+      long since = writeSeq.get();
+      Product read = repo.find(sku);
+      // A read, not a write: it must not undo a write-through (e.g. a delete)
+      // that landed after the row was read.
+      if (read == null) return null;
+      Product cached = cache.compute(read.sku(), (k, v) -> v == null && settled(k, since) ? read : v);
+      return cached != null ? cached : read;
+    }
+  }
+
+  /** Full-text product search (SKU, name, category), best matches first. */
+  public List<Product> search(String text, int limit) {
+    try (Timer.Context t = SEARCH.start()) {
+      return repo.search(text, limit);
+    }
   }
 
+  /** Sorted listing straight from SQL; also refreshes the cache with what it read. */
   public List<Product> list(String sort) {
-    String order = switch (sort) {
-      case "PRICE_ASC" -> "order by price asc";
-      case "PRICE_DESC" -> "order by price desc";
+    try (Timer.Context t = LIST.start()) {
+      long since = writeSeq.get();
+      List<Product> all = repo.list(orderClause(sort));
+      synchronized (cache) {
+        reloadCache(all, since);
+        cacheLoaded = true;
+      }
+      return all;
+    }
+  }
+
+  /**
+   * SQL order clause for a sort key. Accepts both the service keys and the
+   * inventory sort choices shown in the UI (SKU, TOTAL_PRICE_*, DATE_NEWEST...).
+   */
+  static String orderClause(String sort) {
+    if (sort == null) return "order by sku asc";
+    return switch (sort) {
+      case "PRICE_ASC" -> "order by price_cents asc";
+      case "PRICE_DESC" -> "order by price_cents desc";
       case "QTY_ASC" -> "order by qty asc";
       case "QTY_DESC" -> "order by qty desc";
       case "DATE_ASC" -> "order by added_on asc";
@@ -56,26 +251,152 @@ public class InventoryService {
       case "SKU_DESC" -> "order by sku desc";
       case "CATEGORY_ASC" -> "order by category asc";
       case "CATEGORY_DESC" -> "order by category desc";
-      case "TOTALPRICE_ASC" -> "order by (price * qty) asc";
-      case "TOTALPRICE_DESC" -> "order by (price * qty) desc";
+      case "TOTALPRICE_ASC" -> "order by (price_cents * qty) asc";
+      case "TOTALPRICE_DESC" -> "order by (price_cents * qty) desc";
+      case "TOTAL_PRICE_ASC" -> "order by (price_cents * qty) asc";
+      case "TOTAL_PRICE_DESC" -> "order by (price_cents * qty) desc";
+      case "DATE_NEWEST" -> "order by added_on desc";
+      case "DATE_OLDEST" -> "order by added_on asc";
+      case "SKU" -> "order by sku collate nocase asc";
       default -> "order by sku asc";
     };
-    return repo.list(order);
   }
 
-  public void receive(String sku, int add) {
-    Product p = repo.find(sku);
-    if (p == null) throw new IllegalArgumentException("SKU not found");
-    if (add <= 0) throw new IllegalArgumentException("Qty to add must be > 0");
-    repo.updateQty(sku, p.qty() + add);
+  /** Returns the product with its new qty. */
+  public Product receive(String sku, int add) {
+    try (Timer.Context t = RECEIVE.start()) {
+      if (add <= 0) throw new IllegalArgumentException("Qty to add must be > 0");
+      return writeThrough(() -> {
+        Product p = repo.addQty(sku, add);
+        if (p == null) {
+          cacheRemove(sku);
+          throw new IllegalArgumentException("SKU not found");
+        }
+        cachePut(p);
+        return p;
+      });
+    }
+  }
+
+  /**
+   * Issues stock and records the outflow row in one transaction. The decrement
+   * is conditional on enough stock being on hand, so concurrent issues cannot
+   * oversell, and a failure leaves neither the qty change nor the log entry.
+   * Returns the product as updated by the same statement.
+   */
+  public Product issue(String user, String sku, int take) {
+    try (Timer.Context t = ISSUE.start()) {
+      if (take <= 0) throw new IllegalArgumentException("Qty must be > 0");
+      return writeThrough(() -> {
+        Product after = Db.inTransaction(c -> {
+          Product p = repo.takeQty(c, sku, take);
+          if (p == null) {
+            if (repo.find(c, sku) == null) throw new IllegalArgumentException("SKU not found");
+            throw new IllegalArgumentException("Not enough stock");
+          }
+          outflow.add(c, new OutflowEntry(LocalDateTime.now(), user, p.sku(), p.name(),
+              p.unit().name(), take, p.category().name(), p.price()));
+          return p;
+        });
+        cachePut(after);
+        return after;
+      });
+    }
+  }
+
+  /**
+   * Applies a multi-line delivery or handout all-or-nothing. Lines are checked
+   * against one snapshot of the affected products (unknown SKUs, zero qty,
+   * stock going negative); if any line fails nothing is written and the
+   * exception lists every problem. Otherwise the qty changes and the outflow
+   * rows for issued lines go in as batched statements in one transaction.
+   * Returns the affected products after the change, in line order.
+   */
+  public List<Product> applyMovements(String user, List<StockLine> lines) {
+    try (Timer.Context t = APPLY_MOVEMENTS.start()) {
+      if (lines == null || lines.isEmpty()) throw new IllegalArgumentException("No lines to post");
+
+      Map<String, Integer> net = new LinkedHashMap<>();
+      List<String> problems = new ArrayList<>();
+      for (int i = 0; i < lines.size(); i++) {
+        StockLine l = lines.get(i);
+        if (l.sku().isEmpty()) problems.add("Line " + (i + 1) + ": SKU is required");
+        else if (l.delta() == 0) problems.add("Line " + (i + 1) + ": Qty must not be 0");
+        else net.merge(l.sku(), l.delta(), Integer::sum);
+      }
+      if (!problems.isEmpty()) throw new IllegalArgumentException(String.join("\n", problems));
+
+      return writeThrough(() -> {
+        List<Product> updated = Db.inTransaction(c -> {
+          Map<String, Product> snapshot = repo.findAll(c, net.keySet());
+          List<Product> after = new ArrayList<>(net.size());
+          for (Map.Entry<String, Integer> d : net.entrySet()) {
+            Product p = snapshot.get(d.getKey());
+            if (p == null) {
+              problems.add(d.getKey() + ": SKU not found");
+            } else if (p.qty() + d.getValue() < 0) {
+              problems.add(d.getKey() + ": Not enough stock (" + p.qty() + " on hand, " + -d.getValue() + " requested)");
+            } else {
+              after.add(new Product(p.sku(), p.name(), p.price(), p.qty() + d.getValue(),
+                  p.unit(), p.category(), p.addedOn()));
+            }
+          }
+          if (!problems.isEmpty()) throw new IllegalArgumentException(String.join("\n", problems));
+
+          LocalDateTime now = LocalDateTime.now();
+          List<OutflowEntry> issued = new ArrayList<>();
+          for (StockLine l : lines) {
+            if (l.delta() >= 0) continue;
+            Product p = snapshot.get(l.sku());
+            issued.add(new OutflowEntry(now, user, p.sku(), p.name(), p.unit().name(),
+                -l.delta(), p.category().name(), p.price()));
+          }
+
+          repo.addQtyBatch(c, net);
+          outflow.addAll(c, issued);
+          return after;
+        });
+        updated.forEach(this::cachePut);
+        return updated;
+      });
+    }
+  }
+
+  // --- Async variants (run on DbExecutor, never on the FX thread) ------------
+
+  public CompletableFuture<Product> createAsync(String sku, String name, BigDecimal price, int qty, UnitType unit, Category cat) {
+    return DbExecutor.supply(() -> create(sku, name, price, qty, unit, cat));
+  }
+
+  public CompletableFuture<Product> updateAsync(String sku, String name, BigDecimal price, UnitType unit, Category cat) {
+    return DbExecutor.supply(() -> update(sku, name, price, unit, cat));
+  }
+
+  public CompletableFuture<Void> deleteAsync(String sku) {
+    return DbExecutor.run(() -> delete(sku));
+  }
+
+  public CompletableFuture<Product> findAsync(String sku) {
+    return DbExecutor.supply(() -> find(sku));
+  }
+
+  public CompletableFuture<List<Product>> listAsync(String sort) {
+    return DbExecutor.supply(() -> list(sort));
+  }
+
+  public CompletableFuture<List<Product>> searchAsync(String text, int limit) {
+    return DbExecutor.supply(() -> search(text, limit));
+  }
+
+  public CompletableFuture<Product> receiveAsync(String sku, int add) {
+    return DbExecutor.supply(() -> receive(sku, add));
+  }
+
+  public CompletableFuture<Product> issueAsync(String user, String sku, int take) {
+    return DbExecutor.supply(() -> issue(user, sku, take));
   }
 
-  public Product issue(String sku, int take) {
-    Product p = repo.find(sku);
-    if (p == null) throw new IllegalArgumentException("SKU not found");
-    if (take <= 0) throw new IllegalArgumentException("Qty must be > 0");
-    if (p.qty() < take) throw new IllegalArgumentException("Not enough stock");
-    repo.updateQty(sku, p.qty() - take);
-    return repo.find(sku);
+  public CompletableFuture<List<Product>> applyMovementsAsync(String user, List<StockLine> lines) {
+    return DbExecutor.supply(() -> applyMovements(user, lines));
   }
 }
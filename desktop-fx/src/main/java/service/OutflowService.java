@@ -1,13 +1,24 @@
 package service;
 
+import metrics.Metrics;
+import metrics.Timer;
 import model.OutflowEntry;
+import model.OutflowTotal;
 import repo.OutflowRepo;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class OutflowService {
+  private static final Timer LOG_ISSUE = Metrics.timer("service.OutflowService.logIssue");
+  private static final Timer PAGE = Metrics.timer("service.OutflowService.page");
+  private static final Timer SEARCH = Metrics.timer("service.OutflowService.search");
+  private static final Timer TOTALS = Metrics.timer("service.OutflowService.totals");
+  private static final Timer REBUILD_DAILY = Metrics.timer("service.OutflowService.rebuildDaily");
+
   private final OutflowRepo repo = new OutflowRepo();
 
   // New API: capture category and price; compute totalPrice
@@ -20,7 +31,9 @@ public class OutflowService {
     BigDecimal total = priceNN.multiply(BigDecimal.valueOf(qty));
 
     // Construct OutflowEntry with LocalDateTime, category, price, and totalPrice
-    repo.add(new OutflowEntry(now, user, sku, name, unit, qty, category, priceNN, total));
+    try (Timer.Context t = LOG_ISSUE.start()) {
+      repo.add(new OutflowEntry(now, user, sku, name, unit, qty, category, priceNN, total));
+    }
   }
 
   // Backward compatibility overload: if caller doesn't pass category/price yet
@@ -29,4 +42,44 @@ public class OutflowService {
   }
 
   public List<OutflowEntry> listAll() { return repo.listAll(); }
+
+  /** One keyset page of history; pass the previous page's cursor to continue. */
+  public OutflowRepo.Page page(String sortKey, OutflowRepo.Cursor after, int limit) {
+    try (Timer.Context t = PAGE.start()) {
+      return repo.page(sortKey, after, limit);
+    }
+  }
+
+  /** Full-text search over history (user, SKU, product, category); bounds are optional. */
+  public List<OutflowEntry> search(String text, LocalDateTime from, LocalDateTime to, int limit) {
+    try (Timer.Context t = SEARCH.start()) {
+      return repo.search(text, from, to, limit);
+    }
+  }
+
+  public CompletableFuture<List<OutflowEntry>> searchAsync(String text, LocalDateTime from, LocalDateTime to, int limit) {
+    return DbExecutor.supply(() -> search(text, from, to, limit));
+  }
+
+  /** Issued qty/value per day, week, month or year from the daily rollup. */
+  public List<OutflowTotal> totals(OutflowRepo.Period period, LocalDate from, LocalDate to, boolean byCategory) {
+    try (Timer.Context t = TOTALS.start()) {
+      return repo.totals(period, from, to, byCategory);
+    }
+  }
+
+  public CompletableFuture<List<OutflowTotal>> totalsAsync(OutflowRepo.Period period, LocalDate from, LocalDate to, boolean byCategory) {
+    return DbExecutor.supply(() -> totals(period, from, to, byCategory));
+  }
+
+  /** Recomputes the daily rollup from scratch (repair tool; inserts keep it current). */
+  public void rebuildDaily() {
+    try (Timer.Context t = REBUILD_DAILY.start()) {
+      repo.rebuildDaily();
+    }
+  }
+
+  public CompletableFuture<OutflowRepo.Page> pageAsync(String sortKey, OutflowRepo.Cursor after, int limit) {
+    return DbExecutor.supply(() -> page(sortKey, after, limit));
+  }
 }
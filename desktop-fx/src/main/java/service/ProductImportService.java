@@ -0,0 +1,355 @@
+package service;
+
+import db.Db;
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Timer;
+import model.Category;
+import model.Product;
+import model.UnitType;
+import repo.ProductRepo;
+import util.CsvEncoder;
+import util.CsvReader;
+import util.PathUtil;
+import util.TimeUtil;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bulk catalogue import from CSV. The file is parsed as a stream and checked
+ * line by line; valid rows are applied in chunks of {@value #CHUNK}, each one
+ * transaction that loads the affected products with one lookup, diffs them
+ * and upserts only what changed as a JDBC batch. A dry run does the same
+ * diff on a reader and writes nothing, not even the rejects report below.
+ *
+ * <p>The header names the columns, in any order and case: SKU, Name, Price,
+ * Unit and Category are required, Qty and AddedOn optional, anything else is
+ * ignored, so an inventory export can be edited and imported back. Without a
+ * Qty value an existing product keeps its stock and a new one starts at 0.
+ * Rejected lines are counted and the first {@value #KEEP} are returned; a
+ * real import also writes all of them to an {@code import_rejects_*.csv} in
+ * the export folder.
+ */
+public class ProductImportService {
+  private static final System.Logger LOG = System.getLogger(ProductImportService.class.getName());
+  private static final Timer IMPORT = Metrics.timer("service.ProductImportService.importProducts");
+  private static final Counter ROWS_IMPORTED = Metrics.counter("import.rows.written");
+
+  /** Valid rows per transaction. */
+  static final int CHUNK = 2_000;
+
+  /** Changes and rejects kept in the result for display; the counts cover everything. */
+  static final int KEEP = 500;
+
+  private static final DateTimeFormatter DT_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+  /** Lines read so far; {@link #cancelled} is polled between chunks. */
+  public interface Progress {
+    void lines(long read);
+    boolean cancelled();
+
+    Progress NONE = new Progress() {
+      @Override public void lines(long read) {}
+      @Override public boolean cancelled() { return false; }
+    };
+  }
+
+  /** One product the import adds ({@code before} is null) or changes. */
+  public record Change(long line, Product before, Product after) {}
+
+  /** A line that was not imported and why. */
+  public record Reject(long line, String reason) {}
+
+  /**
+   * What an import did, or would do for a dry run. {@code changes} and
+   * {@code rejects} hold the first {@value #KEEP} of each; {@code rejectsFile}
+   * is null for a dry run or when nothing was rejected.
+   */
+  public record Result(boolean dryRun, long lines, long added, long updated, long unchanged, long rejected,
+                       List<Change> changes, List<Reject> rejects, Path rejectsFile, long millis) {}
+
+  private final ProductRepo repo = new ProductRepo();
+  private final InventoryService inventory;
+
+  /** {@code inventory} is the service whose product cache a real import invalidates. */
+  public ProductImportService(InventoryService inventory) {
+    this.inventory = inventory;
+  }
+
+  public Result importProducts(Path csv, boolean dryRun, Progress progress) {
+    long start = System.nanoTime();
+    try (Timer.Context t = IMPORT.start();
+         CsvReader in = new CsvReader(Files.newBufferedReader(csv, StandardCharsets.UTF_8));
+         Rejects rejects = new Rejects(csv, !dryRun)) {
+      List<String> header = in.next();
+      if (header == null) throw new IllegalArgumentException("The file is empty");
+      Columns cols = Columns.of(header);
+
+      Tally tally = new Tally();
+      Map<String, Long> seen = new HashMap<>();
+      List<Row> chunk = new ArrayList<>(CHUNK);
+      long lines = 0;
+      try {
+        for (List<String> rec = in.next(); rec != null; rec = in.next()) {
+          lines++;
+          long line = in.line();
+          String problem;
+          Row row = null;
+          if (rec.size() != header.size()) {
+            problem = "expected " + header.size() + " fields, found " + rec.size();
+          } else {
+            try {
+              row = cols.parse(line, rec);
+              Long first = seen.putIfAbsent(row.sku(), line);
+              problem = first == null ? null : "SKU " + row.sku() + " already appears on line " + first;
+            } catch (IllegalArgumentException e) {
+              problem = e.getMessage();
+            }
+          }
+          if (problem != null) {
+            rejects.add(line, problem, rec);
+          } else {
+            chunk.add(row);
+            if (chunk.size() == CHUNK) {
+              apply(chunk, dryRun, tally);
+              chunk.clear();
+              progress.lines(lines);
+              if (progress.cancelled()) throw new CancellationException("Import cancelled");
+            }
+          }
+        }
+        if (!chunk.isEmpty()) apply(chunk, dryRun, tally);
+        progress.lines(lines);
+      } finally {
+        // Chunks already committed stay; the cache must not keep their old rows.
+        if (!dryRun && tally.added + tally.updated > 0) inventory.invalidate();
+      }
+
+      long ms = (System.nanoTime() - start) / 1_000_000;
+      LOG.log(System.Logger.Level.INFO, "{0} {1}: {2} lines, {3} added, {4} updated, {5} unchanged, {6} rejected in {7} ms",
+          dryRun ? "Dry run of" : "Imported", csv, lines, tally.added, tally.updated, tally.unchanged,
+          rejects.count, ms);
+      return new Result(dryRun, lines, tally.added, tally.updated, tally.unchanged, rejects.count,
+          List.copyOf(tally.changes), List.copyOf(rejects.kept), rejects.file, ms);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public CompletableFuture<Result> importProductsAsync(Path csv, boolean dryRun, Progress progress) {
+    return DbExecutor.supply(() -> importProducts(csv, dryRun, progress));
+  }
+
+  /** Diffs one chunk against the database and, unless this is a dry run, upserts what changed. */
+  private void apply(List<Row> chunk, boolean dryRun, Tally tally) {
+    if (dryRun) {
+      try (Connection c = Db.reader()) {
+        diff(c, chunk, tally);
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+      return;
+    }
+    List<Product> changed = Db.inTransaction(c -> {
+      List<Product> out = diff(c, chunk, tally);
+      repo.upsertAll(c, out);
+      return out;
+    });
+    ROWS_IMPORTED.add(changed.size());
+  }
+
+  private List<Product> diff(Connection c, List<Row> chunk, Tally tally) throws SQLException {
+    List<String> skus = new ArrayList<>(chunk.size());
+    for (Row r : chunk) skus.add(r.sku());
+    Map<String, Product> existing = repo.findAll(c, skus);
+    List<Product> changed = new ArrayList<>();
+    for (Row r : chunk) {
+      Product before = existing.get(r.sku());
+      Product after = r.toProduct(before);
+      if (before == null) {
+        tally.added++;
+      } else if (same(before, after)) {
+        tally.unchanged++;
+        continue;
+      } else {
+        tally.updated++;
+      }
+      changed.add(after);
+      if (tally.changes.size() < KEEP) tally.changes.add(new Change(r.line(), before, after));
+    }
+    return changed;
+  }
+
+  private static boolean same(Product a, Product b) {
+    return a.name().equals(b.name()) && a.price().compareTo(b.price()) == 0 && a.qty() == b.qty()
+        && a.unit() == b.unit() && a.category() == b.category();
+  }
+
+  private static final class Tally {
+    long added;
+    long updated;
+    long unchanged;
+    final List<Change> changes = new ArrayList<>();
+  }
+
+  /** One validated line. A null {@code qty} leaves an existing product's stock alone. */
+  private record Row(long line, String sku, String name, BigDecimal price, Integer qty,
+                     UnitType unit, Category category, LocalDateTime addedOn) {
+    Product toProduct(Product before) {
+      if (before == null) {
+        return new Product(sku, name, price, qty == null ? 0 : qty, unit, category,
+            addedOn == null ? LocalDateTime.now() : addedOn);
+      }
+      return new Product(sku, name, price, qty == null ? before.qty() : qty, unit, category, before.addedOn());
+    }
+  }
+
+  /** Header positions of the known columns; -1 when an optional one is absent. */
+  private record Columns(int sku, int name, int price, int qty, int unit, int category, int addedOn) {
+
+    static Columns of(List<String> header) {
+      Map<String, Integer> at = new HashMap<>();
+      for (int i = 0; i < header.size(); i++) {
+        at.putIfAbsent(header.get(i).trim().toLowerCase(Locale.ROOT).replace(" ", ""), i);
+      }
+      List<String> missing = new ArrayList<>();
+      for (String required : List.of("SKU", "Name", "Price", "Unit", "Category")) {
+        if (!at.containsKey(required.toLowerCase(Locale.ROOT))) missing.add(required);
+      }
+      if (!missing.isEmpty()) {
+        throw new IllegalArgumentException("Missing column(s) " + String.join(", ", missing)
+            + "; the header must name SKU, Name, Price, Unit and Category (Qty and AddedOn are optional)");
+      }
+      return new Columns(at.get("sku"), at.get("name"), at.get("price"), at.getOrDefault("qty", -1),
+          at.get("unit"), at.get("category"), at.getOrDefault("addedon", -1));
+    }
+
+    /** Validates one record; the exception message is the reject reason. */
+    Row parse(long line, List<String> rec) {
+      String s = rec.get(sku).trim();
+      if (s.isEmpty()) throw new IllegalArgumentException("SKU is required");
+      if (s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) throw new IllegalArgumentException("SKU must be on one line");
+      String n = rec.get(name).trim();
+      if (n.isEmpty()) throw new IllegalArgumentException("Name is required");
+      return new Row(line, s, n, price(rec.get(price)), qty == -1 ? null : qty(rec.get(qty)),
+          constant(UnitType.class, "Unit", rec.get(unit)), constant(Category.class, "Category", rec.get(category)),
+          addedOn == -1 ? null : addedOn(rec.get(addedOn)));
+    }
+
+    /** Accepts the export's "1,234.50" as well as plain numbers. */
+    private static BigDecimal price(String s) {
+      String v = s.trim().replace(",", "");
+      if (v.isEmpty()) throw new IllegalArgumentException("Price is required");
+      BigDecimal p;
+      try {
+        p = new BigDecimal(v);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Price '" + s.trim() + "' is not a number");
+      }
+      if (p.signum() < 0) throw new IllegalArgumentException("Price must be >= 0");
+      return p.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static Integer qty(String s) {
+      String v = s.trim().replace(",", "");
+      if (v.isEmpty()) return null;
+      int q;
+      try {
+        q = Integer.parseInt(v);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Qty '" + s.trim() + "' is not a whole number");
+      }
+      if (q < 0) throw new IllegalArgumentException("Qty must be >= 0");
+      return q;
+    }
+
+    private static <E extends Enum<E>> E constant(Class<E> type, String what, String s) {
+      String v = s.trim().toUpperCase(Locale.ROOT);
+      for (E e : type.getEnumConstants()) {
+        if (e.name().equals(v)) return e;
+      }
+      throw new IllegalArgumentException(what + " '" + s.trim() + "' is not one of "
+          + Arrays.toString(type.getEnumConstants()));
+    }
+
+    /** The export's "yyyy-MM-dd HH:mm", ISO date-time, or a bare date. */
+    private static LocalDateTime addedOn(String s) {
+      String v = s.trim();
+      if (v.isEmpty()) return null;
+      try {
+        return v.length() == 10 ? LocalDate.parse(v).atStartOfDay()
+            : v.indexOf('T') > 0 ? LocalDateTime.parse(v) : LocalDateTime.parse(v, DT_FMT);
+      } catch (DateTimeParseException e) {
+        throw new IllegalArgumentException("AddedOn '" + v + "' is not a date (expected yyyy-MM-dd HH:mm)");
+      }
+    }
+  }
+
+  /**
+   * Counts rejected lines, keeps the first few and, when {@code report} is
+   * set, writes every one with the original fields to a file in the export
+   * folder opened on first use.
+   */
+  private static final class Rejects implements AutoCloseable {
+    private final Path source;
+    private final boolean report;
+    private final List<Reject> kept = new ArrayList<>();
+    private long count;
+    private Path file;
+    private BufferedWriter out;
+    private CsvEncoder csv;
+
+    Rejects(Path source, boolean report) {
+      this.source = source;
+      this.report = report;
+    }
+
+    void add(long line, String reason, List<String> fields) throws IOException {
+      count++;
+      if (kept.size() < KEEP) kept.add(new Reject(line, reason));
+      if (!report) return;
+      if (out == null) {
+        String base = source.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        file = PathUtil.ensureExportFolder().resolve("import_rejects_" + base + "_" + TimeUtil.timestamp() + ".csv");
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        csv = new CsvEncoder(out);
+        csv.text("Line");
+        csv.text("Reason");
+        csv.text("Fields");
+        csv.endRow();
+      }
+      csv.integer(line);
+      csv.text(reason);
+      for (String f : fields) csv.text(f);
+      csv.endRow();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (out == null) return;
+      csv.flush();
+      out.close();
+    }
+  }
+}
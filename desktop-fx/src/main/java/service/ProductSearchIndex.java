@@ -0,0 +1,180 @@
+package service;
+
+import model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * In-memory search index for the inventory filter box. Matching is the same
+ * as the old filter (case-insensitive substring of SKU or name), but keys are
+ * lowercased once when a product is indexed, queries of three or more chars
+ * start from a trigram posting list instead of the whole catalog, and a query
+ * that extends the previous one only re-checks the previous hits.
+ *
+ * <p>Products live in numbered slots. Updates retire the old slot and append
+ * a new one; the index compacts itself once half the slots are dead.
+ */
+public final class ProductSearchIndex {
+
+  private static final int GRAM = 3;
+
+  private final List<String> skus = new ArrayList<>();   // slot -> SKU
+  private final List<String> keys = new ArrayList<>();   // slot -> "sku\0name" lowercased, null when dead
+  private final Map<String, Integer> slotBySku = new HashMap<>();
+  private final Map<String, IntList> grams = new HashMap<>();
+  private int dead;
+
+  // Last query and its hits, for incremental narrowing while typing.
+  private String lastQuery;
+  private BitSet lastHits;
+
+  // Immutable copy of slotBySku handed to predicates; dropped on every change.
+  private Map<String, Integer> slotSnapshot;
+
+  /** Replaces the whole index with {@code products}. */
+  public synchronized void rebuild(Collection<Product> products) {
+    skus.clear();
+    keys.clear();
+    slotBySku.clear();
+    grams.clear();
+    dead = 0;
+    for (Product p : products) {
+      if (p != null) append(p);
+    }
+    lastQuery = null;
+  }
+
+  /** Adds or replaces one product. */
+  public synchronized void put(Product p) {
+    retire(p.sku());
+    append(p);
+    lastQuery = null;
+    compactIfSparse();
+  }
+
+  public synchronized void remove(String sku) {
+    retire(sku);
+    lastQuery = null;
+    compactIfSparse();
+  }
+
+  public synchronized int size() {
+    return slotBySku.size();
+  }
+
+  /**
+   * Predicate selecting the products that match {@code query}. Membership is
+   * a map lookup plus a bit test, so the FilteredList pass over the catalog
+   * does no string work per product.
+   */
+  public synchronized Predicate<Product> filter(String query) {
+    String q = query == null ? "" : query.toLowerCase(Locale.ROOT);
+    if (q.isEmpty()) {
+      lastQuery = null;
+      return p -> p != null;
+    }
+
+    BitSet hits = new BitSet(keys.size());
+    if (lastQuery != null && q.contains(lastQuery)) {
+      for (int s = lastHits.nextSetBit(0); s >= 0; s = lastHits.nextSetBit(s + 1)) {
+        check(s, q, hits);
+      }
+    } else if (q.length() >= GRAM) {
+      IntList rarest = null;
+      for (int i = 0; i + GRAM <= q.length(); i++) {
+        IntList posting = grams.get(q.substring(i, i + GRAM));
+        if (posting == null) { rarest = IntList.EMPTY; break; }
+        if (rarest == null || posting.size < rarest.size) rarest = posting;
+      }
+      for (int i = 0; i < rarest.size; i++) check(rarest.items[i], q, hits);
+    } else {
+      for (int s = 0; s < keys.size(); s++) check(s, q, hits);
+    }
+
+    lastQuery = q;
+    lastHits = hits;
+    if (slotSnapshot == null) slotSnapshot = Map.copyOf(slotBySku);
+    Map<String, Integer> slots = slotSnapshot;
+    return p -> {
+      if (p == null) return false;
+      Integer s = slots.get(p.sku());
+      return s != null && hits.get(s);
+    };
+  }
+
+  private void check(int slot, String q, BitSet hits) {
+    String key = keys.get(slot);
+    if (key != null && key.contains(q)) hits.set(slot);
+  }
+
+  private void append(Product p) {
+    String sku = p.sku().toLowerCase(Locale.ROOT);
+    appendKey(p.sku(), sku + '\0' + p.name().toLowerCase(Locale.ROOT), sku.length());
+  }
+
+  private void retire(String sku) {
+    slotSnapshot = null;
+    Integer slot = slotBySku.remove(sku);
+    if (slot != null) {
+      keys.set(slot, null);
+      dead++;
+    }
+  }
+
+  private void compactIfSparse() {
+    if (dead < 64 || dead * 2 < keys.size()) return;
+    List<String> liveSkus = new ArrayList<>();
+    List<String> liveKeys = new ArrayList<>();
+    for (int s = 0; s < keys.size(); s++) {
+      if (keys.get(s) != null) {
+        liveSkus.add(skus.get(s));
+        liveKeys.add(keys.get(s));
+      }
+    }
+    skus.clear();
+    keys.clear();
+    slotBySku.clear();
+    grams.clear();
+    dead = 0;
+    for (int i = 0; i < liveKeys.size(); i++) {
+      String key = liveKeys.get(i);
+      appendKey(liveSkus.get(i), key, key.indexOf('\0'));
+    }
+  }
+
+  /** Indexes {@code key} in a new slot; trigrams spanning the separator at {@code sep} are skipped. */
+  private void appendKey(String sku, String key, int sep) {
+    slotSnapshot = null;
+    int slot = keys.size();
+    skus.add(sku);
+    keys.add(key);
+    slotBySku.put(sku, slot);
+    for (int i = 0; i + GRAM <= key.length(); i++) {
+      if (i <= sep && sep < i + GRAM) continue;
+      IntList posting = grams.computeIfAbsent(key.substring(i, i + GRAM), k -> new IntList());
+      // A key can repeat a trigram; slots only grow, so checking the tail is enough.
+      if (posting.size == 0 || posting.items[posting.size - 1] != slot) posting.add(slot);
+    }
+  }
+
+  /** Growable, ascending list of slot numbers. */
+  private static final class IntList {
+    static final IntList EMPTY = new IntList();
+
+    int[] items = new int[4];
+    int size;
+
+    void add(int v) {
+      if (size == items.length) items = Arrays.copyOf(items, size * 2);
+      items[size++] = v;
+    }
+  }
+}
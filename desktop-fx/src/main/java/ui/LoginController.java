@@ -21,6 +21,9 @@ public class LoginController {
 
   public void onLoggedIn(Consumer<String> cb) { this.onLogged = cb; }
 
+  /** Shows a status or error line under the form, e.g. while the main window is still loading. */
+  public void setMessage(String text) { msg.setText(text); }
+
   @FXML
   public void handleLogin(ActionEvent event) {
     String u = userField.getText() == null ? "" : userField.getText().trim();
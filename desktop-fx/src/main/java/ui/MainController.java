@@ -1,29 +1,60 @@
 package ui;
 
+import db.Backup;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Timer;
 import model.Category;
 import model.OutflowEntry;
 import model.Product;
+import model.StockLine;
 import model.UnitType;
+import repo.OutflowRepo;
+import service.BackupService;
 import service.ExportService;
 import service.InventoryService;
 import service.OutflowService;
+import service.ProductImportService;
+import service.ProductSearchIndex;
+import util.PathUtil;
 import javafx.scene.layout.GridPane;
+import javafx.stage.FileChooser;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.stage.Modality;
 import javafx.stage.Window;
+import javafx.util.Duration;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
+import java.io.File;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.time.format.DateTimeFormatter;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
@@ -45,22 +76,59 @@ public class MainController {
   @FXML private TableColumn<OutflowEntry, String> ofCat;
   @FXML private TableColumn<OutflowEntry, BigDecimal> ofPrice;
   @FXML private TableColumn<OutflowEntry, BigDecimal> ofTotalPrice;
+  @FXML private TextField outflowSearchField;
 
   @FXML private Label exportMsg;
+  @FXML private Label backupMsg;
+  @FXML private Button exportCancel;
 
   // UI controls from FXML (needed for sorting, search and analytics text)
   @FXML private ChoiceBox<String> sortChoice;
   @FXML private TextField searchField;
   @FXML private Label analyticsLabel;
+  @FXML private ProgressIndicator busyIndicator;
+
+  @FXML private Tab diagnosticsTab;
+  @FXML private TableView<Timer.Snapshot> metricsTable;
+  @FXML private TableColumn<Timer.Snapshot, String> mName;
+  @FXML private TableColumn<Timer.Snapshot, Number> mCount, mMean, mP50, mP95, mP99, mMax;
+  @FXML private Label countersLabel;
 
   private final InventoryService inv = new InventoryService();
   private final OutflowService out = new OutflowService();
   private final ExportService exp = new ExportService();
+  private final BackupService backups = new BackupService();
+  private final ProductImportService imports = new ProductImportService(inv);
 
   private FilteredList<Product> filtered;
+  private ObservableList<Product> inventoryItems;
+  private Comparator<Product> inventoryOrder;
+  private Task<Path> exportTask;
+
+  // Background work bookkeeping (FX thread only)
+  private final Set<String> inFlight = new HashSet<>();
+  // Backups and restores share one key, so neither starts while the other runs.
+  private static final String BACKUP_OP = "backup";
+  private int busyCount;
+  private long inventoryGen;
+  private long inventoryShownGen;
+
+  // Outflow table paging state (see loadMoreOutflow)
+  private static final int OUTFLOW_PAGE = 200;
+  private static final int OUTFLOW_PREFETCH = 40;
+  private final ObservableList<OutflowEntry> outflowItems = FXCollections.observableArrayList();
+  private String outflowSortKey = "DATE_DESC";
+  private OutflowRepo.Cursor outflowCursor;
+  private boolean outflowExhausted;
+  private boolean outflowLoading;
+  private static final int OUTFLOW_SEARCH_LIMIT = 500;
+  private final PauseTransition outflowSearchDebounce = new PauseTransition(Duration.millis(250));
+  private long outflowGen;
   private static final DateTimeFormatter OUTFLOW_DTF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
   private static final DecimalFormat MONEY = new DecimalFormat("#,##0.00");
   private boolean searchBound = false;
+  private final ProductSearchIndex searchIndex = new ProductSearchIndex();
+  private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(150));
   private static String fmtMoney(BigDecimal v) { return v == null ? "" : MONEY.format(v); }
 
   private static String toUiDate(Object dt) {
@@ -77,9 +145,7 @@ public class MainController {
 
   private void applyFilter(String newText) {
     if (filtered == null) return;
-    String q = newText == null ? "" : newText.toLowerCase();
-    filtered.setPredicate(p -> p != null &&
-        (p.sku().toLowerCase().contains(q) || p.name().toLowerCase().contains(q)));
+    filtered.setPredicate(searchIndex.filter(newText));
   }
 
   @FXML
@@ -169,28 +235,112 @@ public class MainController {
       ofTotalPrice.setComparator(Comparator.nullsLast(Comparator.naturalOrder()));
     }
 
+    // Outflow history is paged in from the database as the user scrolls, and
+    // column sorting is pushed down to SQL instead of sorting loaded rows.
+    outflowTable.setItems(outflowItems);
+    outflowTable.setSortPolicy(t -> {
+      String key = getOutflowSortKey();
+      if (!key.equals(outflowSortKey)) {
+        outflowSortKey = key;
+        Platform.runLater(this::refreshOutflow);
+      }
+      return true;
+    });
+    outflowTable.setRowFactory(t -> new TableRow<>() {
+      @Override protected void updateItem(OutflowEntry item, boolean empty) {
+        super.updateItem(item, empty);
+        if (!empty && getIndex() >= outflowItems.size() - OUTFLOW_PREFETCH) {
+          Platform.runLater(MainController.this::loadMoreOutflow);
+        }
+      }
+    });
+
+    if (outflowSearchField != null) {
+      outflowSearchDebounce.setOnFinished(e -> refreshOutflow());
+      outflowSearchField.textProperty().addListener((obs, __, txt) -> outflowSearchDebounce.playFromStart());
+    }
+
     sortChoice.setItems(FXCollections.observableArrayList("SKU","PRICE_ASC","PRICE_DESC","QTY_ASC","QTY_DESC","TOTAL_PRICE_ASC","TOTAL_PRICE_DESC","DATE_NEWEST","DATE_OLDEST"));
     sortChoice.setValue("SKU");
     sortChoice.getSelectionModel().selectedItemProperty().addListener((obs, oldV, newV) -> refreshInventory());
     if (!searchBound) {
-      searchField.textProperty().addListener((obs, __, txt) -> applyFilter(txt));
+      // Debounced: the filter runs once typing pauses, not on every keystroke.
+      searchDebounce.setOnFinished(e -> applyFilter(searchField.getText()));
+      searchField.textProperty().addListener((obs, __, txt) -> searchDebounce.playFromStart());
       searchBound = true;
     }
 
+    setUpDiagnostics();
+  }
+
+  /**
+   * Fills both tables. Main calls this on the FX thread as soon as the view is
+   * built, which is usually while the login screen is still up.
+   */
+  public void loadData() {
     refreshInventory();
     refreshOutflow();
   }
 
+  // --- Diagnostics -------------------------------------------------------------
+
+  private final Timeline metricsRefresh = new Timeline(new KeyFrame(Duration.seconds(2), e -> refreshMetrics()));
+
+  /** Timer table that refreshes every two seconds while its tab is showing. */
+  private void setUpDiagnostics() {
+    if (metricsTable == null) return;
+    mName.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().name()));
+    mCount.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(c.getValue().count()));
+    mMean.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(c.getValue().mean()));
+    mP50.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(c.getValue().p50()));
+    mP95.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(c.getValue().p95()));
+    mP99.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(c.getValue().p99()));
+    mMax.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(c.getValue().max()));
+    for (TableColumn<Timer.Snapshot, Number> col : List.of(mMean, mP50, mP95, mP99, mMax)) {
+      col.setCellFactory(c -> new TableCell<>() {
+        @Override protected void updateItem(Number item, boolean empty) {
+          super.updateItem(item, empty);
+          setText(empty || item == null ? null : String.format("%.2f", item.doubleValue()));
+        }
+      });
+    }
+    metricsRefresh.setCycleCount(Timeline.INDEFINITE);
+    diagnosticsTab.selectedProperty().addListener((obs, was, selected) -> {
+      if (selected) {
+        refreshMetrics();
+        metricsRefresh.play();
+      } else {
+        metricsRefresh.stop();
+      }
+    });
+  }
+
+  private void refreshMetrics() {
+    // Keep the user's column sort across refreshes.
+    metricsTable.getItems().setAll(Metrics.timers().stream().filter(s -> s.count() > 0).toList());
+    metricsTable.sort();
+    StringBuilder sb = new StringBuilder();
+    for (Counter c : Metrics.counters()) {
+      if (sb.length() > 0) sb.append("   ");
+      sb.append(c.name()).append(": ").append(String.format("%,d", c.getCount()));
+    }
+    countersLabel.setText(sb.toString());
+  }
+
+  @FXML
+  public void resetMetrics() {
+    Metrics.reset();
+    refreshMetrics();
+  }
+
   // Helper: compute total price for a product (null-safe) used by comparators
   private static BigDecimal calcTotal(Product p) {
     if (p == null || p.price() == null) return null;
     return p.price().multiply(BigDecimal.valueOf(p.qty()));
   }
 
-  private List<Product> getInventorySorted(String sortKey) {
-    // start from a stable base (by SKU) and sort in-memory for all keys
-    List<Product> base = inv.list("SKU");
-
+  private static Comparator<Product> inventoryOrder(String sortKey) {
+    // applied in memory to the by-SKU listing, and to place rows patched in after a write
     Comparator<Product> cmp;
     switch (sortKey) {
       case "PRICE_ASC":
@@ -228,33 +378,166 @@ public class MainController {
         cmp = Comparator.comparing(Product::sku, String.CASE_INSENSITIVE_ORDER);
     }
 
-    return base.stream().sorted(cmp).toList();
+    return cmp;
+  }
+
+  // --- Background work -------------------------------------------------------
+
+  /**
+   * Runs a service future and hands its result back on the FX thread. While
+   * anything is in flight the busy indicator shows; a second click on the
+   * same action ({@code op}) is ignored until the first one finishes.
+   * Failures are shown as an alert.
+   */
+  private <T> void async(String op, Supplier<CompletableFuture<T>> call, Consumer<T> onOk) {
+    if (!inFlight.add(op)) return;
+    busy(+1);
+    CompletableFuture<T> f;
+    try {
+      f = call.get();
+    } catch (RuntimeException e) {
+      f = CompletableFuture.failedFuture(e);
+    }
+    f.whenComplete((v, err) -> Platform.runLater(() -> {
+      inFlight.remove(op);
+      busy(-1);
+      if (err != null) alert(rootMessage(err));
+      else onOk.accept(v);
+    }));
   }
 
+  private void busy(int delta) {
+    busyCount += delta;
+    if (busyIndicator != null) busyIndicator.setVisible(busyCount > 0);
+  }
+
+  private static String rootMessage(Throwable t) {
+    while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+      t = t.getCause();
+    }
+    return t.getMessage() == null ? t.toString() : t.getMessage();
+  }
+
+  /**
+   * Reloads the inventory off the FX thread. Refreshes are never dropped; if
+   * several overlap (e.g. quick sort changes) only the newest result is shown.
+   */
   @FXML
   public void refreshInventory() {
-    String sortKey = sortChoice.getValue();
-    List<Product> list = getInventorySorted(sortKey);
-    filtered = new FilteredList<>(FXCollections.observableList(list), p -> p != null);
-    inventoryTable.setItems(filtered);
+    Comparator<Product> order = inventoryOrder(sortChoice.getValue());
+    long gen = ++inventoryGen;
+    busy(+1);
+    inv.listAsync("SKU")
+        .thenApply(base -> {
+          List<Product> sorted = new ArrayList<>(base);
+          sorted.sort(order);
+          return sorted;
+        })
+        .whenComplete((list, err) -> Platform.runLater(() -> {
+          busy(-1);
+          if (gen != inventoryGen) return;
+          inventoryShownGen = gen;
+          if (err != null) { alert(rootMessage(err)); return; }
+          searchIndex.rebuild(list);
+          inventoryItems = FXCollections.observableList(list);
+          inventoryOrder = order;
+          filtered = new FilteredList<>(inventoryItems, p -> p != null);
+          inventoryTable.setItems(filtered);
+          applyFilter(searchField.getText());
+          showInventoryTotals();
+        }));
+  }
+
+  /**
+   * Puts products returned by a write into the table and the search index at
+   * their place in the current sort, and takes out {@code removedSku}, so an
+   * edit does not reload and re-index the whole catalog. While a reload is
+   * still in flight its result may predate the write, so that case reloads.
+   */
+  private void patchInventory(List<Product> written, String removedSku) {
+    if (inventoryItems == null || inventoryShownGen != inventoryGen) {
+      refreshInventory();
+      return;
+    }
+    Set<String> skus = new HashSet<>();
+    if (removedSku != null) {
+      skus.add(removedSku);
+      searchIndex.remove(removedSku);
+    }
+    for (Product p : written) {
+      skus.add(p.sku());
+      searchIndex.put(p);
+    }
+    inventoryItems.removeIf(p -> skus.contains(p.sku()));
+    for (Product p : written) {
+      int at = Collections.binarySearch(inventoryItems, p, inventoryOrder);
+      inventoryItems.add(at < 0 ? -at - 1 : at, p);
+    }
+    // The current predicate only knows the slots indexed before this change.
     applyFilter(searchField.getText());
-    int totalQty = list.stream().mapToInt(Product::qty).sum();
-    analyticsLabel.setText("Items: " + list.size() + "  Qty total: " + totalQty);
+    showInventoryTotals();
+  }
+
+  private void showInventoryTotals() {
+    int totalQty = inventoryItems.stream().mapToInt(Product::qty).sum();
+    analyticsLabel.setText("Items: " + inventoryItems.size() + "  Qty total: " + totalQty);
   }
 
+  /**
+   * Drops the loaded outflow rows and fetches the first page for the current
+   * sort, or, while the outflow search box has text, the ranked search hits.
+   */
   @FXML
   public void refreshOutflow() {
-    outflowTable.setItems(FXCollections.observableArrayList(out.listAll()));
+    outflowGen++;
+    outflowItems.clear();
+    outflowCursor = null;
+    outflowLoading = false;
+
+    String q = outflowSearchField == null ? null : outflowSearchField.getText();
+    if (q == null || q.isBlank()) {
+      outflowExhausted = false;
+      loadMoreOutflow();
+      return;
+    }
+
+    outflowExhausted = true; // search results are a single ranked batch
+    long gen = outflowGen;
+    busy(+1);
+    out.searchAsync(q, null, null, OUTFLOW_SEARCH_LIMIT)
+        .whenComplete((rows, err) -> Platform.runLater(() -> {
+          busy(-1);
+          if (gen != outflowGen) return;
+          if (err != null) { alert(rootMessage(err)); return; }
+          outflowItems.setAll(rows);
+        }));
+  }
+
+  /** Appends the next keyset page; called as rows near the end become visible. */
+  private void loadMoreOutflow() {
+    if (outflowExhausted || outflowLoading) return;
+    outflowLoading = true;
+    long gen = outflowGen;
+    busy(+1);
+    out.pageAsync(outflowSortKey, outflowCursor, OUTFLOW_PAGE)
+        .whenComplete((page, err) -> Platform.runLater(() -> {
+          busy(-1);
+          if (gen != outflowGen) return; // a refresh started since; its own load is running
+          outflowLoading = false;
+          if (err != null) { alert(rootMessage(err)); return; }
+          outflowItems.addAll(page.rows());
+          outflowCursor = page.next();
+          outflowExhausted = page.next() == null;
+        }));
   }
 
   @FXML
   public void addProduct() {
     Dialog<Product> dlg = productDialog(null);
     Optional<Product> res = dlg.showAndWait();
-    res.ifPresent(p -> {
-      inv.create(p.sku(), p.name(), p.price(), p.qty(), p.unit(), p.category());
-      refreshInventory();
-    });
+    res.ifPresent(p -> async("add",
+        () -> inv.createAsync(p.sku(), p.name(), p.price(), p.qty(), p.unit(), p.category()),
+        added -> patchInventory(List.of(added), null)));
   }
 
   @FXML
@@ -263,10 +546,9 @@ public class MainController {
     if (sel == null) { alert("Pick a product first"); return; }
     Dialog<Product> dlg = productDialog(sel);
     Optional<Product> res = dlg.showAndWait();
-    res.ifPresent(p -> {
-      inv.update(sel.sku(), p.name(), p.price(), p.unit(), p.category());
-      refreshInventory();
-    });
+    res.ifPresent(p -> async("update",
+        () -> inv.updateAsync(sel.sku(), p.name(), p.price(), p.unit(), p.category()),
+        upd -> patchInventory(List.of(upd), null)));
   }
 
   @FXML
@@ -274,8 +556,7 @@ public class MainController {
     Product sel = inventoryTable.getSelectionModel().getSelectedItem();
     if (sel == null) { alert("Pick a product first"); return; }
     if (confirm("Delete " + sel.name() + " ?")) {
-      inv.delete(sel.sku());
-      refreshInventory();
+      async("delete", () -> inv.deleteAsync(sel.sku()), v -> patchInventory(List.of(), sel.sku()));
     }
   }
 
@@ -291,11 +572,9 @@ public class MainController {
     d.setHeaderText("Receive qty for " + sel.sku());
     d.setContentText("Qty");
     d.showAndWait().ifPresent(q -> {
-      try {
-        int add = Integer.parseInt(q);
-        inv.receive(sel.sku(), add);
-        refreshInventory();
-      } catch (Exception e) { alert(e.getMessage()); }
+      int add;
+      try { add = Integer.parseInt(q.trim()); } catch (NumberFormatException e) { alert("Invalid qty"); return; }
+      async("receive", () -> inv.receiveAsync(sel.sku(), add), after -> patchInventory(List.of(after), null));
     });
   }
 
@@ -311,27 +590,313 @@ public class MainController {
     d.setHeaderText("Issue qty for " + sel.sku());
     d.setContentText("Qty");
     d.showAndWait().ifPresent(q -> {
-      try {
-        int take = Integer.parseInt(q);
-        Product after = inv.issue(sel.sku(), take);
-        out.logIssue("finance", after.sku(), after.name(), after.unit().name(), take, after.category().name(), after.price());
-        refreshInventory();
+      int take;
+      try { take = Integer.parseInt(q.trim()); } catch (NumberFormatException e) { alert("Invalid qty"); return; }
+      async("issue", () -> inv.issueAsync("finance", sel.sku(), take), after -> {
+        patchInventory(List.of(after), null);
         refreshOutflow();
-      } catch (Exception e) { alert(e.getMessage()); }
+      });
     });
   }
 
+  /**
+   * Multi-line receive/issue: one "SKU qty" pair per line (comma, semicolon,
+   * tab or spaces between them, so columns pasted from a spreadsheet work).
+   * All lines are posted together or not at all.
+   */
+  @FXML
+  public void bulkMovement() {
+    Dialog<List<StockLine>> d = new Dialog<>();
+    Window owner = inventoryTable.getScene() != null ? inventoryTable.getScene().getWindow() : null;
+    if (owner != null) d.initOwner(owner);
+    d.initModality(Modality.WINDOW_MODAL);
+    d.setTitle("Bulk Receive / Issue");
+    ButtonType ok = new ButtonType("Post", ButtonBar.ButtonData.OK_DONE);
+    d.getDialogPane().getButtonTypes().addAll(ok, ButtonType.CANCEL);
+
+    ChoiceBox<String> cbMode = new ChoiceBox<>(FXCollections.observableArrayList("Receive", "Issue"));
+    cbMode.setValue("Receive");
+    TextArea fLines = new TextArea();
+    fLines.setPromptText("SKU,Qty  (one line each)");
+    fLines.setPrefRowCount(16);
+
+    GridPane g = new GridPane();
+    g.setHgap(8); g.setVgap(8);
+    g.addRow(0, new Label("Mode"), cbMode);
+    g.addRow(1, new Label("Lines"), fLines);
+    d.getDialogPane().setContent(g);
+
+    d.setResultConverter(bt -> {
+      if (bt != ok) return null;
+      boolean issue = "Issue".equals(cbMode.getValue());
+      List<StockLine> lines = new ArrayList<>();
+      String[] raw = fLines.getText() == null ? new String[0] : fLines.getText().split("\\R");
+      for (int i = 0; i < raw.length; i++) {
+        String line = raw[i].trim();
+        if (line.isEmpty()) continue;
+        String[] parts = line.split("\\s*[,;\\t]\\s*|\\s+");
+        try {
+          int qty = Integer.parseInt(parts[parts.length - 1]);
+          if (parts.length < 2 || qty <= 0) throw new NumberFormatException();
+          lines.add(issue ? StockLine.issue(parts[0], qty) : StockLine.receive(parts[0], qty));
+        } catch (NumberFormatException e) {
+          alert("Line " + (i + 1) + ": expected SKU and a positive qty");
+          return null;
+        }
+      }
+      return lines;
+    });
+
+    d.showAndWait().ifPresent(lines -> {
+      if (lines.isEmpty()) return;
+      async("bulk", () -> inv.applyMovementsAsync("finance", lines), after -> {
+        patchInventory(after, null);
+        refreshOutflow();
+        alert("Posted " + lines.size() + " lines");
+      });
+    });
+  }
+
+  /**
+   * Imports a product catalogue from CSV: a dry run first, whose diff and
+   * rejected lines are shown for confirmation, then the real import.
+   */
+  @FXML
+  public void importProducts() {
+    FileChooser fc = new FileChooser();
+    fc.setTitle("Import Products");
+    fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+    if (Files.isDirectory(PathUtil.exportFolder())) fc.setInitialDirectory(PathUtil.exportFolder().toFile());
+    File file = fc.showOpenDialog(inventoryTable.getScene().getWindow());
+    if (file == null) return;
+    Path csv = file.toPath();
+    async("import", () -> imports.importProductsAsync(csv, true, ProductImportService.Progress.NONE), preview -> {
+      if (preview.added() + preview.updated() == 0) {
+        Alert a = new Alert(Alert.AlertType.INFORMATION, importSummary(preview) + "\nNothing to import.", ButtonType.OK);
+        if (preview.rejected() > 0) a.getDialogPane().setExpandableContent(importDetailsArea(preview));
+        a.showAndWait();
+        return;
+      }
+      Alert a = new Alert(Alert.AlertType.CONFIRMATION, importSummary(preview), ButtonType.OK, ButtonType.CANCEL);
+      a.setTitle("Import Products");
+      a.setHeaderText("Import " + csv.getFileName() + "?");
+      a.getDialogPane().setExpandableContent(importDetailsArea(preview));
+      if (a.showAndWait().filter(ButtonType.OK::equals).isEmpty()) return;
+      async("import", () -> imports.importProductsAsync(csv, false, ProductImportService.Progress.NONE), r -> {
+        refreshInventory();
+        alert(importSummary(r));
+      });
+    });
+  }
+
+  private static String importSummary(ProductImportService.Result r) {
+    String s = (r.dryRun() ? "Would add " : "Added ") + r.added() + ", " + (r.dryRun() ? "update " : "updated ")
+        + r.updated() + ", " + r.unchanged() + " unchanged (" + r.lines() + " lines, " + r.millis() + " ms).";
+    if (r.rejected() > 0) {
+      s += "\n" + r.rejected() + " line(s) rejected, "
+          + (r.rejectsFile() != null ? "listed in " + r.rejectsFile() : "the first ones are under details");
+    }
+    return s;
+  }
+
+  private static TextArea importDetailsArea(ProductImportService.Result r) {
+    TextArea details = new TextArea(importDetails(r));
+    details.setEditable(false);
+    details.setPrefRowCount(20);
+    return details;
+  }
+
+  /** The first changes as before -> after, then the first rejected lines with reasons. */
+  private static String importDetails(ProductImportService.Result r) {
+    StringBuilder sb = new StringBuilder();
+    for (ProductImportService.Change c : r.changes()) {
+      Product a = c.after();
+      sb.append("Line ").append(c.line()).append(": ").append(c.before() == null ? "new " : "update ").append(a.sku());
+      if (c.before() == null) {
+        sb.append(" ").append(a.name()).append(", ").append(fmtMoney(a.price())).append(", qty ").append(a.qty())
+            .append(", ").append(a.unit()).append(", ").append(a.category());
+      } else {
+        Product b = c.before();
+        if (!b.name().equals(a.name())) sb.append(", name ").append(b.name()).append(" -> ").append(a.name());
+        if (b.price().compareTo(a.price()) != 0) sb.append(", price ").append(fmtMoney(b.price())).append(" -> ").append(fmtMoney(a.price()));
+        if (b.qty() != a.qty()) sb.append(", qty ").append(b.qty()).append(" -> ").append(a.qty());
+        if (b.unit() != a.unit()) sb.append(", unit ").append(b.unit()).append(" -> ").append(a.unit());
+        if (b.category() != a.category()) sb.append(", category ").append(b.category()).append(" -> ").append(a.category());
+      }
+      sb.append('\n');
+    }
+    if (r.changes().size() < r.added() + r.updated()) {
+      sb.append("... and ").append(r.added() + r.updated() - r.changes().size()).append(" more\n");
+    }
+    if (!r.rejects().isEmpty()) sb.append("\nRejected:\n");
+    for (ProductImportService.Reject x : r.rejects()) {
+      sb.append("Line ").append(x.line()).append(": ").append(x.reason()).append('\n');
+    }
+    if (r.rejects().size() < r.rejected()) sb.append("... and ").append(r.rejected() - r.rejects().size()).append(" more\n");
+    return sb.toString();
+  }
+
   @FXML
   public void exportInventory() {
-    Path p = exp.exportInventory(getInventorySorted(sortChoice.getValue()), sortChoice.getValue());
-    exportMsg.setText("Saved: " + p.toString());
+    String sortKey = sortChoice.getValue();
+    runExport("Inventory", progress -> exp.exportInventory(sortKey, progress));
   }
 
   @FXML
   public void exportOutflow() {
     String tag = getOutflowSortTag();
-    Path p = exp.exportOutflow(out.listAll(), tag);
-    exportMsg.setText("Saved: " + p.toString());
+    String sortKey = getOutflowSortKey();
+    runExport("Outflow", progress -> exp.exportOutflow(sortKey, tag, progress));
+  }
+
+  @FXML
+  public void exportInventoryXlsx() {
+    String sortKey = sortChoice.getValue();
+    runExport("Inventory", progress -> exp.exportInventory(sortKey, ExportService.Format.XLSX, progress));
+  }
+
+  @FXML
+  public void exportOutflowXlsx() {
+    String tag = getOutflowSortTag();
+    String sortKey = getOutflowSortKey();
+    runExport("Outflow", progress -> exp.exportOutflow(sortKey, tag, ExportService.Format.XLSX, progress));
+  }
+
+  @FXML
+  public void cancelExport() {
+    if (exportTask != null) exportTask.cancel();
+  }
+
+  /**
+   * Runs an export on a virtual thread so the window stays responsive.
+   * exportMsg shows rows written and throughput while it runs; Cancel stops
+   * it and the service removes the partial file.
+   */
+  private void runExport(String what, Function<ExportService.Progress, Path> job) {
+    if (exportTask != null && exportTask.isRunning()) {
+      exportMsg.setText("An export is already running");
+      return;
+    }
+    AtomicLong written = new AtomicLong();
+    long start = System.nanoTime();
+    Task<Path> task = new Task<>() {
+      @Override protected Path call() {
+        return job.apply(new ExportService.Progress() {
+          @Override public void rows(long n) {
+            written.set(n);
+            updateMessage(what + ": " + n + " rows, " + rate(n, start) + " rows/s");
+          }
+          @Override public boolean cancelled() { return isCancelled(); }
+        });
+      }
+    };
+    task.setOnSucceeded(ev -> finishExport("Saved: " + task.getValue()
+        + " (" + written.get() + " rows, " + rate(written.get(), start) + " rows/s)"));
+    task.setOnCancelled(ev -> finishExport(what + " export cancelled"));
+    task.setOnFailed(ev -> finishExport(what + " export failed: " + task.getException().getMessage()));
+
+    exportTask = task;
+    exportMsg.textProperty().bind(task.messageProperty());
+    if (exportCancel != null) exportCancel.setDisable(false);
+    Thread.ofVirtual().name("export-" + what.toLowerCase()).start(task);
+  }
+
+  // --- Backup -------------------------------------------------------------------
+
+  @FXML
+  public void backupNow() {
+    async(BACKUP_OP, () -> {
+      backupMsg.setText("Backing up…");
+      return backups.backupAsync(backupProgress("Backing up"))
+          .whenComplete((r, err) -> reportBackupFailure("Backup", err));
+    }, r -> backupMsg.setText(String.format("Saved %s (%.1f MB in %.1f s, %.1f MB/s)", r.snapshot().dir(),
+        r.snapshot().bytes() / 1_048_576.0, r.millis() / 1000.0, r.mbPerSecond())));
+  }
+
+  /** Lets the user pick a snapshot, then restores it in place and reloads both tables. */
+  @FXML
+  public void restoreBackup() {
+    if (inFlight.contains(BACKUP_OP)) {
+      alert("A backup or restore is still running");
+      return;
+    }
+    List<BackupService.Snapshot> snapshots = backups.snapshots();
+    if (snapshots.isEmpty()) {
+      alert("No backups in " + PathUtil.backupFolder());
+      return;
+    }
+    DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    List<String> labels = snapshots.stream()
+        .map(s -> String.format("%s (%.1f MB)", s.taken().format(fmt), s.bytes() / 1_048_576.0))
+        .toList();
+    ChoiceDialog<String> d = new ChoiceDialog<>(labels.get(0), labels);
+    d.setTitle("Restore Backup");
+    d.setHeaderText("Replace all current data with a backup");
+    Optional<String> picked = d.showAndWait();
+    if (picked.isEmpty()) return;
+    BackupService.Snapshot snapshot = snapshots.get(labels.indexOf(picked.get()));
+    if (!confirm("Restore the backup from " + snapshot.taken().format(fmt) + "?\n"
+        + "Changes made since then are replaced. The current data is backed up first.")) return;
+
+    async(BACKUP_OP, () -> {
+      backupMsg.setText("Restoring…");
+      return backups.restoreAsync(snapshot, backupProgress("Restoring"))
+          .whenComplete((v, err) -> reportBackupFailure("Restore", err));
+    }, v -> {
+      backupMsg.setText("Restored backup from " + snapshot.taken().format(fmt));
+      inv.invalidate();
+      refreshInventory();
+      refreshOutflow();
+    });
+  }
+
+  /** Leaves the failure on the backup label too; async() shows the alert. */
+  private void reportBackupFailure(String what, Throwable err) {
+    if (err != null) Platform.runLater(() -> backupMsg.setText(what + " failed: " + rootMessage(err)));
+  }
+
+  /** Shows percent done per file, updating the label only when the number changes. */
+  private Backup.Progress backupProgress(String what) {
+    AtomicLong shown = new AtomicLong(-1);
+    return (file, copied, total) -> {
+      long pct = total == 0 ? 100 : copied * 100 / total;
+      if (shown.getAndSet(pct) != pct) {
+        Platform.runLater(() -> backupMsg.setText(what + " " + file + ": " + pct + "%"));
+      }
+    };
+  }
+
+  private void finishExport(String msg) {
+    exportMsg.textProperty().unbind();
+    exportMsg.setText(msg);
+    if (exportCancel != null) exportCancel.setDisable(true);
+    exportTask = null;
+  }
+
+  private static long rate(long rows, long startNanos) {
+    long nanos = Math.max(1, System.nanoTime() - startNanos);
+    return rows * 1_000_000_000L / nanos;
+  }
+
+  /** Current outflow column sort as an OutflowRepo ORDER_BY key. */
+  private String getOutflowSortKey() {
+    var order = outflowTable.getSortOrder();
+    if (order == null || order.isEmpty()) return "DATE_DESC";
+
+    TableColumn<?, ?> c = order.get(0);
+    String dir = c.getSortType() == TableColumn.SortType.DESCENDING ? "DESC" : "ASC";
+
+    if (c == ofDate)       return "DATE_" + dir;
+    if (c == ofUser)       return "USER_" + dir;
+    if (c == ofSku)        return "SKU_" + dir;
+    if (c == ofName)       return "NAME_" + dir;
+    if (c == ofUnit)       return "UNIT_" + dir;
+    if (c == ofQty)        return "QTY_" + dir;
+    if (c == ofPrice)      return "PRICE_" + dir;
+    if (c == ofTotalPrice) return "TOTALPRICE_" + dir;
+    if (c == ofCat)        return "CATEGORY_" + dir;
+
+    return "DATE_DESC";
   }
 
   private String getOutflowSortTag() {
@@ -425,16 +990,4 @@ public class MainController {
     return new Alert(Alert.AlertType.CONFIRMATION, msg, ButtonType.OK, ButtonType.CANCEL)
         .showAndWait().filter(ButtonType.OK::equals).isPresent();
   }
-
-  private Product findProduct(String sku) {
-    if (sku == null || sku.isBlank()) return null;
-    try {
-      for (Product p : inv.list("SKU")) {
-        if (p != null && p.sku().equalsIgnoreCase(sku)) {
-          return p;
-        }
-      }
-    } catch (Exception ignored) { }
-    return null;
-  }
 }
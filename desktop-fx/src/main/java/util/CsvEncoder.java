@@ -0,0 +1,180 @@
+package util;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * Writes CSV records into a reusable character buffer that is handed to the
+ * underlying writer every few kilobytes. Values are escaped in a single pass
+ * as they are copied: a field is quoted only when it contains a comma, a
+ * quote or a line break, quotes are doubled, and everything else is copied
+ * as is. Numbers, money and timestamps are formatted digit by digit, so a
+ * row costs no intermediate strings. {@link CsvReader} reads the result.
+ */
+public final class CsvEncoder implements Flushable {
+  private static final int FLUSH_AT = 8 * 1024;
+  private static final String EOL = System.lineSeparator();
+  private static final DateTimeFormatter DT_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+  private final Writer out;
+  private char[] buf = new char[2 * FLUSH_AT];
+  private int pos;
+  private boolean firstField = true;
+
+  public CsvEncoder(Writer out) {
+    this.out = out;
+  }
+
+  /** Null is written as an empty field. */
+  public void text(String s) {
+    separator();
+    if (s == null) return;
+    int len = s.length();
+    ensure(2 * len + 2);
+    int start = pos;
+    boolean quoted = false;
+    for (int i = 0; i < len; i++) {
+      char ch = s.charAt(i);
+      if (ch == '"' || ch == ',' || ch == '\n' || ch == '\r') {
+        if (!quoted) {
+          // First special character: shift what is copied so far to open the quote.
+          System.arraycopy(buf, start, buf, start + 1, pos - start);
+          buf[start] = '"';
+          pos++;
+          quoted = true;
+        }
+        if (ch == '"') buf[pos++] = '"';
+      }
+      buf[pos++] = ch;
+    }
+    if (quoted) buf[pos++] = '"';
+  }
+
+  public void integer(long v) {
+    separator();
+    ensure(20);
+    if (v < 0) {
+      if (v == Long.MIN_VALUE) {
+        text0(Long.toString(v));
+        return;
+      }
+      buf[pos++] = '-';
+      v = -v;
+    }
+    digits(v, 1);
+  }
+
+  /**
+   * A cent amount as {@code 1,234.56}, the way the exports have always shown
+   * prices; quoted once it has a thousands separator.
+   */
+  public void money(long cents) {
+    separator();
+    ensure(34);
+    if (cents == Long.MIN_VALUE) {
+      text0(Money.fromCents(cents).toPlainString());
+      return;
+    }
+    long whole = Math.abs(cents) / 100;
+    int frac = (int) (Math.abs(cents) % 100);
+    boolean quoted = whole >= 1000;
+    if (quoted) buf[pos++] = '"';
+    if (cents < 0) buf[pos++] = '-';
+    int n = digitCount(whole);
+    int end = pos + n + (n - 1) / 3;
+    for (int i = 0; i < n; i++) {
+      if (i > 0 && i % 3 == 0) buf[--end] = ',';
+      buf[--end] = (char) ('0' + whole % 10);
+      whole /= 10;
+    }
+    pos += n + (n - 1) / 3;
+    buf[pos++] = '.';
+    buf[pos++] = (char) ('0' + frac / 10);
+    buf[pos++] = (char) ('0' + frac % 10);
+    if (quoted) buf[pos++] = '"';
+  }
+
+  /** {@code yyyy-MM-dd HH:mm}; null is written as an empty field. */
+  public void dateTime(LocalDateTime dt) {
+    separator();
+    if (dt == null) return;
+    int year = dt.getYear();
+    if (year < 0 || year > 9999) {
+      text0(DT_FMT.format(dt));
+      return;
+    }
+    ensure(16);
+    digits(year, 4);
+    buf[pos++] = '-';
+    digits(dt.getMonthValue(), 2);
+    buf[pos++] = '-';
+    digits(dt.getDayOfMonth(), 2);
+    buf[pos++] = ' ';
+    digits(dt.getHour(), 2);
+    buf[pos++] = ':';
+    digits(dt.getMinute(), 2);
+  }
+
+  /** Ends the record; the buffer goes to the writer once it holds a few kilobytes. */
+  public void endRow() throws IOException {
+    ensure(EOL.length());
+    for (int i = 0; i < EOL.length(); i++) buf[pos++] = EOL.charAt(i);
+    firstField = true;
+    if (pos >= FLUSH_AT) drain();
+  }
+
+  /** Hands buffered records to the writer and flushes it. */
+  @Override
+  public void flush() throws IOException {
+    drain();
+    out.flush();
+  }
+
+  private void drain() throws IOException {
+    out.write(buf, 0, pos);
+    pos = 0;
+  }
+
+  private void separator() {
+    if (firstField) {
+      firstField = false;
+    } else {
+      ensure(1);
+      buf[pos++] = ',';
+    }
+  }
+
+  /** Appends pre-formatted text that needs no escaping (rare fallbacks only). */
+  private void text0(String s) {
+    ensure(s.length());
+    s.getChars(0, s.length(), buf, pos);
+    pos += s.length();
+  }
+
+  /** Writes {@code v >= 0} zero-padded to at least {@code width} digits. */
+  private void digits(long v, int width) {
+    int n = Math.max(width, digitCount(v));
+    for (int i = pos + n - 1; i >= pos; i--) {
+      buf[i] = (char) ('0' + v % 10);
+      v /= 10;
+    }
+    pos += n;
+  }
+
+  private static int digitCount(long v) {
+    int n = 1;
+    while (v >= 10) {
+      v /= 10;
+      n++;
+    }
+    return n;
+  }
+
+  private void ensure(int more) {
+    if (pos + more > buf.length) buf = Arrays.copyOf(buf, Math.max(2 * buf.length, pos + more));
+  }
+}
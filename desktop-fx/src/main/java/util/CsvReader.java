@@ -0,0 +1,112 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming CSV parser, the reading side of {@link CsvEncoder}: fields are
+ * separated by commas, a field in double quotes may contain commas, quotes
+ * (doubled) and line breaks, and records end at LF, CRLF or CR. Reads
+ * through a fixed buffer one record at a time, so files of any size parse
+ * in constant memory. A leading UTF-8 byte order mark is skipped.
+ */
+public final class CsvReader implements Closeable {
+  private final Reader in;
+  private final char[] buf = new char[64 * 1024];
+  private int pos;
+  private int len;
+  private final StringBuilder field = new StringBuilder();
+  private long line = 1;
+  private long recordLine;
+  private boolean started;
+
+  public CsvReader(Reader in) {
+    this.in = in;
+  }
+
+  /** Line number (1-based) on which the record last returned by {@link #next()} starts. */
+  public long line() {
+    return recordLine;
+  }
+
+  /**
+   * Next record, or null at end of input. Blank lines are skipped. Throws
+   * when a quoted field is still open at end of input, since everything
+   * after its opening quote would otherwise end up in one field.
+   */
+  public List<String> next() throws IOException {
+    if (!started) {
+      started = true;
+      if (fill() && buf[pos] == '\uFEFF') pos++;
+    }
+    while (true) {
+      if (pos >= len && !fill()) return null;
+      recordLine = line;
+      List<String> record = new ArrayList<>();
+      boolean more = readField(record);
+      while (more) more = readField(record);
+      if (record.size() == 1 && record.get(0).isEmpty()) continue;
+      return record;
+    }
+  }
+
+  /** Reads one field into {@code record}; true when another field follows on the same record. */
+  private boolean readField(List<String> record) throws IOException {
+    field.setLength(0);
+    boolean quoted = false;
+    if (pos < len || fill()) {
+      if (buf[pos] == '"') {
+        quoted = true;
+        pos++;
+      }
+    }
+    long quoteLine = line;
+    while (true) {
+      if (pos >= len && !fill()) {
+        if (quoted) throw new IOException("Line " + quoteLine + ": quoted field is never closed");
+        record.add(field.toString());
+        return false;
+      }
+      char ch = buf[pos++];
+      if (quoted) {
+        if (ch == '"') {
+          if ((pos < len || fill()) && buf[pos] == '"') {
+            field.append('"');
+            pos++;
+          } else {
+            quoted = false;
+          }
+        } else {
+          if (ch == '\n' || ch == '\r' && !((pos < len || fill()) && buf[pos] == '\n')) line++;
+          field.append(ch);
+        }
+      } else if (ch == ',') {
+        record.add(field.toString());
+        return true;
+      } else if (ch == '\n' || ch == '\r') {
+        if (ch == '\r' && (pos < len || fill()) && buf[pos] == '\n') pos++;
+        line++;
+        record.add(field.toString());
+        return false;
+      } else {
+        field.append(ch);
+      }
+    }
+  }
+
+  private boolean fill() throws IOException {
+    int n = in.read(buf);
+    if (n <= 0) return false;
+    pos = 0;
+    len = n;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,21 @@
+package util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money is stored as integer minor units (cents). These are the only two
+ * places amounts cross between the database and BigDecimal.
+ */
+public class Money {
+  /** Rounds half-up to two decimals and returns the amount in cents. */
+  public static long toCents(BigDecimal v) {
+    if (v == null) return 0;
+    return v.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+  }
+
+  /** Scale-2 BigDecimal for a cent amount; no parsing involved. */
+  public static BigDecimal fromCents(long cents) {
+    return BigDecimal.valueOf(cents, 2);
+  }
+}
@@ -11,6 +11,11 @@ public class PathUtil {
   public static Path exportFolder() {
     return baseFolder().resolve("exports");
   }
+  /** Database snapshots; {@code -Dembassyfx.backupDir} points them elsewhere (e.g. a network share). */
+  public static Path backupFolder() {
+    String dir = System.getProperty("embassyfx.backupDir");
+    return dir == null || dir.isBlank() ? baseFolder().resolve("backups") : Paths.get(dir);
+  }
   public static void ensureBaseFolders() {
     try {
       Files.createDirectories(exportFolder());
@@ -1,9 +1,20 @@
 package util;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 public class TimeUtil {
   private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
   public static String timestamp() { return LocalDateTime.now().format(TS); }
+
+  /** Stored timestamps are epoch milliseconds; the model shows them in the system zone. */
+  public static long toEpochMillis(LocalDateTime dt) {
+    return dt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  public static LocalDateTime fromEpochMillis(long millis) {
+    return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+  }
 }
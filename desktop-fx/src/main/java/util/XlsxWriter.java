@@ -0,0 +1,267 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a single-sheet .xlsx workbook as a stream: the package parts are
+ * fixed text, and the sheet XML goes into the zip one cell at a time, so
+ * memory stays flat however many rows are written. Strings are stored
+ * inline rather than in a shared-strings table for the same reason. The
+ * header row is bold and frozen, columns have the widths given, and an
+ * autofilter covers the data.
+ *
+ * <p>Usage: one call per cell in column order, {@link #endRow()} after each
+ * row, {@link #close()} at the end. The header is written by the constructor.
+ */
+public final class XlsxWriter implements Closeable {
+
+  /** A sheet column; {@code width} is in characters, as Excel measures it. */
+  public record Column(String title, double width) {}
+
+  /** Excel's last row; one is taken by the header. */
+  public static final int MAX_ROWS = 1_048_576;
+
+  // cellXfs indexes in STYLES
+  private static final int STYLE_HEADER = 1;
+  private static final int STYLE_MONEY = 2;
+  private static final int STYLE_DATE_TIME = 3;
+
+  /** Day 0 of Excel's 1900 date system, as used for serial numbers above 60. */
+  private static final LocalDate EXCEL_EPOCH = LocalDate.of(1899, 12, 30);
+
+  private static final String XML_HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+  private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+  private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+  private static final String CONTENT_TYPES = XML_HEAD + """
+      <Types xmlns="http://schemas.openxmlformats.org/package/2006/content-types">\
+      <Default Extension="rels" ContentType="application/vnd.openxmlformats-package.relationships+xml"/>\
+      <Default Extension="xml" ContentType="application/xml"/>\
+      <Override PartName="/xl/workbook.xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml"/>\
+      <Override PartName="/xl/worksheets/sheet1.xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml"/>\
+      <Override PartName="/xl/styles.xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml"/>\
+      </Types>""";
+
+  private static final String ROOT_RELS = XML_HEAD + """
+      <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">\
+      <Relationship Id="rId1" Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument" Target="xl/workbook.xml"/>\
+      </Relationships>""";
+
+  private static final String WORKBOOK_RELS = XML_HEAD + """
+      <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">\
+      <Relationship Id="rId1" Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet" Target="worksheets/sheet1.xml"/>\
+      <Relationship Id="rId2" Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles" Target="styles.xml"/>\
+      </Relationships>""";
+
+  /** Default, bold header, #,##0.00 and yyyy-mm-dd hh:mm. */
+  private static final String STYLES = XML_HEAD + """
+      <styleSheet xmlns="%s">\
+      <numFmts count="1"><numFmt numFmtId="164" formatCode="yyyy-mm-dd hh:mm"/></numFmts>\
+      <fonts count="2"><font><sz val="11"/><name val="Calibri"/></font><font><b/><sz val="11"/><name val="Calibri"/></font></fonts>\
+      <fills count="2"><fill><patternFill patternType="none"/></fill><fill><patternFill patternType="gray125"/></fill></fills>\
+      <borders count="1"><border><left/><right/><top/><bottom/><diagonal/></border></borders>\
+      <cellStyleXfs count="1"><xf numFmtId="0" fontId="0" fillId="0" borderId="0"/></cellStyleXfs>\
+      <cellXfs count="4">\
+      <xf numFmtId="0" fontId="0" fillId="0" borderId="0" xfId="0"/>\
+      <xf numFmtId="0" fontId="1" fillId="0" borderId="0" xfId="0" applyFont="1"/>\
+      <xf numFmtId="4" fontId="0" fillId="0" borderId="0" xfId="0" applyNumberFormat="1"/>\
+      <xf numFmtId="164" fontId="0" fillId="0" borderId="0" xfId="0" applyNumberFormat="1"/>\
+      </cellXfs>\
+      <cellStyles count="1"><cellStyle name="Normal" xfId="0" builtinId="0"/></cellStyles>\
+      </styleSheet>""".formatted(MAIN_NS);
+
+  private final ZipOutputStream zip;
+  private final Writer w;
+  private final String sheetName;
+  private final List<Column> columns;
+  private final String[] letters;
+  private int row;
+  private int col;
+  private boolean rowOpen;
+
+  /** Writes the fixed parts, the sheet head and the header row to {@code out}. */
+  public XlsxWriter(OutputStream out, String sheetName, List<Column> columns) throws IOException {
+    this.zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+    // Most of the time goes into deflate; the fastest level still shrinks sheet XML about tenfold.
+    zip.setLevel(Deflater.BEST_SPEED);
+    this.w = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+    this.sheetName = sheetName;
+    this.columns = List.copyOf(columns);
+    this.letters = new String[columns.size()];
+    for (int i = 0; i < letters.length; i++) letters[i] = columnLetters(i);
+
+    part("[Content_Types].xml", CONTENT_TYPES);
+    part("_rels/.rels", ROOT_RELS);
+    part("xl/_rels/workbook.xml.rels", WORKBOOK_RELS);
+    part("xl/styles.xml", STYLES);
+
+    zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+    w.write(XML_HEAD);
+    w.write("<worksheet xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\">");
+    w.write("<sheetViews><sheetView workbookViewId=\"0\">"
+        + "<pane ySplit=\"1\" topLeftCell=\"A2\" activePane=\"bottomLeft\" state=\"frozen\"/>"
+        + "<selection pane=\"bottomLeft\" activeCell=\"A2\" sqref=\"A2\"/></sheetView></sheetViews>");
+    w.write("<cols>");
+    for (int i = 0; i < this.columns.size(); i++) {
+      w.write("<col min=\"" + (i + 1) + "\" max=\"" + (i + 1) + "\" width=\"" + this.columns.get(i).width()
+          + "\" customWidth=\"1\"/>");
+    }
+    w.write("</cols><sheetData>");
+    for (Column c : this.columns) text(c.title(), STYLE_HEADER);
+    endRow();
+  }
+
+  /** Data rows written so far, not counting the header. */
+  public long rows() {
+    return Math.max(0, row - 1);
+  }
+
+  public void text(String s) throws IOException {
+    text(s, 0);
+  }
+
+  public void integer(long v) throws IOException {
+    number(Long.toString(v), 0);
+  }
+
+  public void money(BigDecimal v) throws IOException {
+    if (v == null) blank();
+    else number(v.toPlainString(), STYLE_MONEY);
+  }
+
+  /** Stored as an Excel serial date, so it sorts and filters as a date. */
+  public void dateTime(LocalDateTime dt) throws IOException {
+    if (dt == null) {
+      blank();
+      return;
+    }
+    double serial = ChronoUnit.DAYS.between(EXCEL_EPOCH, dt.toLocalDate())
+        + dt.toLocalTime().toSecondOfDay() / 86_400.0;
+    number(Double.toString(serial), STYLE_DATE_TIME);
+  }
+
+  /** Skips a cell. */
+  public void blank() {
+    col++;
+  }
+
+  /** Ends the current row; a row of only blanks is left out of the sheet. */
+  public void endRow() throws IOException {
+    if (rowOpen) w.write("</row>");
+    rowOpen = false;
+    row++;
+    col = 0;
+  }
+
+  private void number(String v, int style) throws IOException {
+    startCell(style);
+    w.write("><v>");
+    w.write(v);
+    w.write("</v></c>");
+  }
+
+  private void text(String s, int style) throws IOException {
+    if (s == null || s.isEmpty()) {
+      blank();
+      return;
+    }
+    startCell(style);
+    w.write(" t=\"inlineStr\"><is><t");
+    if (Character.isWhitespace(s.charAt(0)) || Character.isWhitespace(s.charAt(s.length() - 1))) {
+      w.write(" xml:space=\"preserve\"");
+    }
+    w.write('>');
+    escape(s);
+    w.write("</t></is></c>");
+  }
+
+  /** Opens the row on its first cell and writes {@code <c r=".." s=".."} without closing the tag. */
+  private void startCell(int style) throws IOException {
+    if (col >= letters.length) throw new IllegalStateException("Row " + (row + 1) + " has more than " + letters.length + " cells");
+    if (row >= MAX_ROWS) throw new IllegalStateException("More rows than a worksheet holds (" + MAX_ROWS + ")");
+    String r = Integer.toString(row + 1);
+    if (!rowOpen) {
+      w.write("<row r=\"" + r + "\">");
+      rowOpen = true;
+    }
+    w.write("<c r=\"");
+    w.write(letters[col]);
+    w.write(r);
+    w.write('"');
+    if (style != 0) {
+      w.write(" s=\"");
+      w.write(Integer.toString(style));
+      w.write('"');
+    }
+    col++;
+  }
+
+  /** XML-escapes {@code s}; control characters XML cannot carry are dropped. */
+  private void escape(String s) throws IOException {
+    int from = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char ch = s.charAt(i);
+      String rep;
+      if (ch == '&') rep = "&amp;";
+      else if (ch == '<') rep = "&lt;";
+      else if (ch == '>') rep = "&gt;";
+      else if (ch < 0x20 && ch != '\t' && ch != '\n' && ch != '\r' || ch == 0xFFFE || ch == 0xFFFF) rep = "";
+      else continue;
+      w.write(s, from, i - from);
+      w.write(rep);
+      from = i + 1;
+    }
+    w.write(s, from, s.length() - from);
+  }
+
+  /**
+   * Ends the sheet (adding the autofilter now that the last row is known),
+   * writes the workbook part and finishes the zip. Closes the stream.
+   */
+  @Override
+  public void close() throws IOException {
+    String range = "A1:" + letters[letters.length - 1] + Math.max(row, 1);
+    w.write("</sheetData><autoFilter ref=\"" + range + "\"/></worksheet>");
+    w.flush();
+    zip.closeEntry();
+
+    String quoted = "'" + sheetName.replace("'", "''") + "'!" + range.replaceAll("([A-Z]+)(\\d+)", "\\$$1\\$$2");
+    part("xl/workbook.xml", XML_HEAD + "<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\">"
+        + "<sheets><sheet name=\"" + xmlAttr(sheetName) + "\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+        + "<definedNames><definedName name=\"_xlnm._FilterDatabase\" localSheetId=\"0\" hidden=\"1\">"
+        + xmlAttr(quoted) + "</definedName></definedNames></workbook>");
+    w.close();
+  }
+
+  private void part(String name, String xml) throws IOException {
+    zip.putNextEntry(new ZipEntry(name));
+    w.write(xml);
+    w.flush();
+    zip.closeEntry();
+  }
+
+  private static String xmlAttr(String s) {
+    return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+  }
+
+  /** 0 -> A, 25 -> Z, 26 -> AA. */
+  private static String columnLetters(int index) {
+    StringBuilder sb = new StringBuilder();
+    for (int n = index + 1; n > 0; n = (n - 1) / 26) sb.insert(0, (char) ('A' + (n - 1) % 26));
+    return sb.toString();
+  }
+}
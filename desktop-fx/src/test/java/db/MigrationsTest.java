@@ -0,0 +1,71 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class MigrationsTest {
+
+  @TempDir
+  Path dir;
+
+  /** A database from before migration 2, with text timestamps some of which never parsed. */
+  @Test
+  void malformedLegacyTimestampsDoNotAbortMigration() throws SQLException {
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("legacy.db"));
+         Statement st = c.createStatement()) {
+      st.execute("""
+                create table products(
+                  sku text primary key, name text not null, price real not null, qty integer not null,
+                  unit text not null, category text not null, added_on text not null
+                )""");
+      st.execute("""
+                create table outflow(
+                  id integer primary key autoincrement, date_time text not null, user text not null,
+                  sku text not null, product_name text not null, unit text not null, qty integer not null
+                )""");
+      st.execute("""
+                insert into products values
+                  ('A', 'Apple', 1.5, 3, 'PCS', 'OTHER', '2024-03-01T10:15:00'),
+                  ('B', 'Bolt', 2, 1, 'PCS', 'OTHER', ''),
+                  ('C', 'Cable', 2, 1, 'PCS', 'OTHER', 'last tuesday')""");
+      st.execute("""
+                insert into outflow(date_time, user, sku, product_name, unit, qty) values
+                  ('2024-03-02T09:00:00', 'u', 'A', 'Apple', 'PCS', 1),
+                  ('', 'u', 'A', 'Apple', 'PCS', 1),
+                  ('n/a', 'u', 'B', 'Bolt', 'PCS', 2)""");
+
+      Migrations.migrate(c);
+
+      assertEquals(Migrations.latestVersion(), Migrations.userVersion(c));
+      Map<String, Long> addedOn = longs(st, "select sku, added_on from products");
+      assertNotEquals(0L, addedOn.get("A"));
+      assertEquals(0L, addedOn.get("B"));
+      assertEquals(0L, addedOn.get("C"));
+      Map<String, Long> dateTime = longs(st, "select id, date_time from outflow");
+      assertNotEquals(0L, dateTime.get("1"));
+      assertEquals(0L, dateTime.get("2"));
+      assertEquals(0L, dateTime.get("3"));
+      assertEquals(4L, longs(st, "select 'qty', sum(qty) from outflow_daily").get("qty"));
+    }
+  }
+
+  private static Map<String, Long> longs(Statement st, String sql) throws SQLException {
+    Map<String, Long> out = new LinkedHashMap<>();
+    try (ResultSet rs = st.executeQuery(sql)) {
+      while (rs.next()) out.put(rs.getString(1), rs.getLong(2));
+    }
+    return out;
+  }
+}
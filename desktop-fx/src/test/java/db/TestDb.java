@@ -0,0 +1,29 @@
+package db;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/** Scratch databases laid out like the live one, for tests outside this package. */
+public final class TestDb {
+
+  private TestDb() {}
+
+  /**
+   * Opens {@code embassy.db} in {@code dir} with {@code archive.db} next to it
+   * attached, both schemas migrated to this build, as the pool's writer does.
+   */
+  public static Connection open(Path dir) throws SQLException {
+    Connection c = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve(Backup.MAIN_FILE));
+    try {
+      OutflowArchive.attach(c, dir.resolve(Backup.ARCHIVE_FILE));
+      Migrations.migrate(c);
+      OutflowArchive.createSchema(c);
+      return c;
+    } catch (SQLException | RuntimeException e) {
+      c.close();
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package repo;
+
+import db.TestDb;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryPlanVerifierTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void everyOutflowSortIsServedByAnIndex() throws SQLException {
+    try (Connection c = TestDb.open(dir)) {
+      assertEquals(List.of(), QueryPlanVerifier.verify(c));
+    }
+  }
+}
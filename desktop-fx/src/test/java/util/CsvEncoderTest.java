@@ -0,0 +1,98 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Golden output: every expected string is what the exports wrote before
+ * CsvEncoder, i.e. CsvEscaper.escape over NumberUtil.price and the
+ * yyyy-MM-dd HH:mm format. Users diff new exports against old ones and
+ * import them back, so these must not change.
+ */
+class CsvEncoderTest {
+
+  private static final String EOL = System.lineSeparator();
+
+  @Test
+  void textIsQuotedOnlyWhenItHasToBe() throws IOException {
+    assertCell("HP Laser Toner 85A", csv -> csv.text("HP Laser Toner 85A"));
+    assertCell("\"Toner, black\"", csv -> csv.text("Toner, black"));
+    assertCell("\"12\"\" monitor\"", csv -> csv.text("12\" monitor"));
+    assertCell("\"\"\"\"", csv -> csv.text("\""));
+    assertCell("\"line1\nline2\"", csv -> csv.text("line1\nline2"));
+    assertCell("\"cr\rend\"", csv -> csv.text("cr\rend"));
+    assertCell("\"crlf\r\nend\"", csv -> csv.text("crlf\r\nend"));
+    assertCell("  spaced  ", csv -> csv.text("  spaced  "));
+    assertCell("\"Ünïcödé, ✓\"", csv -> csv.text("Ünïcödé, ✓"));
+    assertCell("", csv -> csv.text(""));
+    assertCell("", csv -> csv.text(null));
+  }
+
+  @Test
+  void moneyHasTwoDecimalsAndIsQuotedFromOneThousand() throws IOException {
+    assertCell("0.00", csv -> csv.money(0));
+    assertCell("0.05", csv -> csv.money(5));
+    assertCell("0.99", csv -> csv.money(99));
+    assertCell("1.00", csv -> csv.money(100));
+    assertCell("999.99", csv -> csv.money(99_999));
+    assertCell("\"1,000.00\"", csv -> csv.money(100_000));
+    assertCell("\"1,234.56\"", csv -> csv.money(123_456));
+    assertCell("\"1,234,567.89\"", csv -> csv.money(123_456_789));
+    assertCell("\"1,000,000,000.00\"", csv -> csv.money(100_000_000_000L));
+    assertCell("-0.05", csv -> csv.money(-5));
+    assertCell("\"-1,234.56\"", csv -> csv.money(-123_456));
+  }
+
+  @Test
+  void dateTimesAreMinutePrecision() throws IOException {
+    assertCell("2025-01-05 09:07", csv -> csv.dateTime(LocalDateTime.of(2025, 1, 5, 9, 7)));
+    assertCell("2025-12-31 23:59", csv -> csv.dateTime(LocalDateTime.of(2025, 12, 31, 23, 59, 59)));
+    assertCell("0999-03-04 00:00", csv -> csv.dateTime(LocalDateTime.of(999, 3, 4, 0, 0)));
+    assertCell("", csv -> csv.dateTime(null));
+  }
+
+  @Test
+  void integersArePlain() throws IOException {
+    assertCell("0", csv -> csv.integer(0));
+    assertCell("-7", csv -> csv.integer(-7));
+    assertCell("9223372036854775807", csv -> csv.integer(Long.MAX_VALUE));
+    assertCell("-9223372036854775808", csv -> csv.integer(Long.MIN_VALUE));
+  }
+
+  @Test
+  void rowsAreCommaSeparatedAndEndWithTheLineSeparator() throws IOException {
+    StringWriter out = new StringWriter();
+    CsvEncoder csv = new CsvEncoder(out);
+    csv.text("A1");
+    csv.text("Toner, black");
+    csv.integer(3);
+    csv.money(123_456);
+    csv.dateTime(LocalDateTime.of(2025, 1, 5, 9, 7));
+    csv.endRow();
+    csv.text(null);
+    csv.text("");
+    csv.endRow();
+    csv.flush();
+    assertEquals("A1,\"Toner, black\",3,\"1,234.56\",2025-01-05 09:07" + EOL + "," + EOL, out.toString());
+  }
+
+  /** Writes one single-cell row and compares it with {@code expected} plus the line end. */
+  private static void assertCell(String expected, Cell cell) throws IOException {
+    StringWriter out = new StringWriter();
+    CsvEncoder csv = new CsvEncoder(out);
+    cell.write(csv);
+    csv.endRow();
+    csv.flush();
+    assertEquals(expected + EOL, out.toString());
+  }
+
+  @FunctionalInterface
+  private interface Cell {
+    void write(CsvEncoder csv) throws IOException;
+  }
+}
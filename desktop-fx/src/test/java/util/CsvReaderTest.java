@@ -0,0 +1,99 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvReaderTest {
+
+  @Test
+  void quotedFieldsKeepCommasAndDoubledQuotes() throws IOException {
+    assertEquals(List.of(
+            List.of("sku", "name", "price"),
+            List.of("A1", "Toner, black", "12\" monitor"),
+            List.of("", "\"", "")),
+        records("sku,name,price\nA1,\"Toner, black\",\"12\"\" monitor\"\n,\"\"\"\",\n"));
+  }
+
+  @Test
+  void recordsEndAtLfCrlfOrCr() throws IOException {
+    CsvReader in = reader("a,1\r\nb,2\rc,3\nd,4");
+    assertRecord(in, 1, "a", "1");
+    assertRecord(in, 2, "b", "2");
+    assertRecord(in, 3, "c", "3");
+    assertRecord(in, 4, "d", "4");
+    assertNull(in.next());
+  }
+
+  @Test
+  void lineBreaksInsideQuotesAreDataAndStillCounted() throws IOException {
+    CsvReader in = reader("x,\"one\ntwo\"\ny,\"cr\rlf\r\nend\"\nz,last\n");
+    assertRecord(in, 1, "x", "one\ntwo");
+    assertRecord(in, 3, "y", "cr\rlf\r\nend");
+    assertRecord(in, 6, "z", "last");
+    assertNull(in.next());
+  }
+
+  @Test
+  void byteOrderMarkAndBlankLinesAreSkipped() throws IOException {
+    CsvReader in = reader("\uFEFFsku,qty\n\n\r\nA1,5\n\n");
+    assertRecord(in, 1, "sku", "qty");
+    assertRecord(in, 4, "A1", "5");
+    assertNull(in.next());
+  }
+
+  @Test
+  void unterminatedQuoteIsAnErrorNamingItsLine() throws IOException {
+    CsvReader in = reader("a,b\nc,\"never\nclosed,d\n");
+    assertRecord(in, 1, "a", "b");
+    IOException e = assertThrows(IOException.class, in::next);
+    assertTrue(e.getMessage().startsWith("Line 2:"), e.getMessage());
+  }
+
+  @Test
+  void readsBackWhatCsvEncoderWrites() throws IOException {
+    // The long value spans the reader's buffer, with quotes on both sides of the boundary.
+    String longValue = "x".repeat(64 * 1024 - 20) + "\"q\", and\nmore";
+    List<List<String>> rows = List.of(
+        List.of("SKU", "Name", "Notes"),
+        List.of("A1", "Toner, black", "12\" monitor"),
+        List.of("B2", "line1\nline2", "cr\rand\r\ncrlf"),
+        List.of("C3", "", "  spaced  "),
+        List.of("D4", "Ünïcödé ✓", longValue));
+    StringWriter out = new StringWriter();
+    CsvEncoder csv = new CsvEncoder(out);
+    for (List<String> row : rows) {
+      for (String v : row) csv.text(v);
+      csv.endRow();
+    }
+    csv.flush();
+    assertEquals(rows, records(out.toString()));
+  }
+
+  private static CsvReader reader(String s) {
+    return new CsvReader(new StringReader(s));
+  }
+
+  private static List<List<String>> records(String s) throws IOException {
+    List<List<String>> out = new ArrayList<>();
+    try (CsvReader in = reader(s)) {
+      for (List<String> r = in.next(); r != null; r = in.next()) out.add(r);
+    }
+    return out;
+  }
+
+  private static void assertRecord(CsvReader in, long line, String... fields) throws IOException {
+    assertEquals(Arrays.asList(fields), in.next());
+    assertEquals(line, in.line());
+  }
+}